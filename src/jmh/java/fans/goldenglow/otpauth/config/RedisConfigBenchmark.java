@@ -0,0 +1,48 @@
+package fans.goldenglow.otpauth.config;
+
+import fans.goldenglow.otpauth.dto.VerificationCode;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link VerificationCode} serialization with the value serializer of the template from
+ * {@link RedisConfig#redisTemplate(org.springframework.data.redis.connection.RedisConnectionFactory)}.
+ * No Redis connection is opened.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisConfigBenchmark {
+    private RedisSerializer<VerificationCode> serializer;
+    private VerificationCode verificationCode;
+    private byte[] serialized;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        RedisTemplate<String, VerificationCode> template = new RedisConfig().redisTemplate(new LettuceConnectionFactory());
+        template.afterPropertiesSet();
+        serializer = (RedisSerializer<VerificationCode>) template.getValueSerializer();
+
+        verificationCode = new VerificationCode("123456", LocalDateTime.now());
+        serialized = serializer.serialize(verificationCode);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(verificationCode);
+    }
+
+    @Benchmark
+    public VerificationCode deserialize() {
+        return serializer.deserialize(serialized);
+    }
+}
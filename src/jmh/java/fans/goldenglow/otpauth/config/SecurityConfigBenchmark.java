@@ -0,0 +1,48 @@
+package fans.goldenglow.otpauth.config;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import fans.goldenglow.otpauth.service.SecurityService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks decoding and verifying an access token with the decoder from {@link SecurityConfig#jwtDecoder()}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecurityConfigBenchmark {
+    private JwtDecoder jwtDecoder;
+    private String accessToken;
+
+    @Setup
+    public void setUp() {
+        SecurityService securityService = new SecurityService();
+        jwtDecoder = new SecurityConfig(securityService, null, new SimpleMeterRegistry(), null).jwtDecoder();
+
+        Instant now = Instant.now();
+        accessToken = JWT
+                .create()
+                .withIssuer("benchmark")
+                .withIssuedAt(now)
+                .withExpiresAt(now.plus(1, ChronoUnit.DAYS))
+                .withSubject("42")
+                .withClaim("scope", "profile")
+                .sign(Algorithm.HMAC256(securityService.getSecret().getEncoded()));
+    }
+
+    @Benchmark
+    public Jwt decode() {
+        return jwtDecoder.decode(accessToken);
+    }
+}
@@ -0,0 +1,33 @@
+package fans.goldenglow.otpauth.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks JWT signing in {@link TokenService#generateToken(String, long, String[])}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenServiceBenchmark {
+    private static final String[] PROFILE_SCOPES = {"profile"};
+
+    private TokenService tokenService;
+
+    @Setup
+    public void setUp() {
+        tokenService = new TokenService(null, null, new VerificationCodeGenerator(), null, null, new SecurityService(), null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenService, "JWT_ISSUER", "benchmark");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return tokenService.generateToken("42", 5, PROFILE_SCOPES);
+    }
+}
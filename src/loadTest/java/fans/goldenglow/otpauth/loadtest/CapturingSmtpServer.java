@@ -0,0 +1,162 @@
+package fans.goldenglow.otpauth.loadtest;
+
+import jakarta.mail.Address;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal in-memory SMTP server that stands in for the real mail server during load tests.
+ * <p>
+ * It accepts every message, parses it with Jakarta Mail, extracts the verification code from the
+ * rendered {@code email-verification} template and keeps the latest code per recipient. Messages
+ * themselves are not stored, so memory stays flat for long runs. Each connection is served on its
+ * own virtual thread.
+ */
+public class CapturingSmtpServer implements Closeable {
+    private static final Pattern VERIFICATION_CODE = Pattern.compile("class=\"verification-code\"[^>]*>\\s*(\\d+)\\s*<");
+
+    private final ServerSocket serverSocket;
+    private final Session session = Session.getInstance(new Properties());
+    private final Map<String, String> codes = new ConcurrentHashMap<>();
+    private final Thread acceptor;
+
+    public CapturingSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        acceptor = Thread.ofPlatform().daemon().name("smtp-stand-in").start(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Waits for a verification code addressed to the given recipient and removes it.
+     *
+     * @param email the recipient address
+     * @param timeoutMillis how long to wait for the message to arrive
+     * @return the captured code, or null if none arrived in time
+     */
+    public String takeCode(String email, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        String key = email.toLowerCase();
+        while (true) {
+            String code = codes.remove(key);
+            if (code != null || System.currentTimeMillis() >= deadline) {
+                return code;
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        acceptor.interrupt();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().start(() -> handle(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1)) {
+            reply(out, "220 localhost SMTP stand-in");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+                switch (command) {
+                    case "EHLO" -> reply(out, "250-localhost\r\n250 8BITMIME");
+                    case "HELO", "MAIL", "RCPT", "RSET", "NOOP" -> reply(out, "250 OK");
+                    case "DATA" -> {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        capture(readData(in));
+                        reply(out, "250 OK");
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (Exception e) {
+            // The client closed the connection or sent something unexpected; nothing to clean up.
+        }
+    }
+
+    private static void reply(Writer out, String response) throws IOException {
+        out.write(response);
+        out.write("\r\n");
+        out.flush();
+    }
+
+    private static byte[] readData(BufferedReader in) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(".")) {
+            if (line.startsWith("..")) {
+                line = line.substring(1);
+            }
+            data.writeBytes(line.getBytes(StandardCharsets.ISO_8859_1));
+            data.writeBytes(new byte[]{'\r', '\n'});
+        }
+        return data.toByteArray();
+    }
+
+    private void capture(byte[] data) throws Exception {
+        MimeMessage message = new MimeMessage(session, new ByteArrayInputStream(data));
+        String html = findHtml(message);
+        if (html == null) {
+            return;
+        }
+        Matcher matcher = VERIFICATION_CODE.matcher(html);
+        if (!matcher.find()) {
+            return;
+        }
+        Address[] recipients = message.getAllRecipients();
+        if (recipients != null) {
+            for (Address recipient : recipients) {
+                codes.put(((InternetAddress) recipient).getAddress().toLowerCase(), matcher.group(1));
+            }
+        }
+    }
+
+    private static String findHtml(Part part) throws Exception {
+        if (part.isMimeType("text/html")) {
+            return (String) part.getContent();
+        }
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                String html = findHtml(multipart.getBodyPart(i));
+                if (html != null) {
+                    return html;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,240 @@
+package fans.goldenglow.otpauth.loadtest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the application stays responsive when Redis, PostgreSQL or the SMTP server stops answering.
+ * <p>
+ * Each dependency is reached through a {@link FaultInjectingProxy}, which the tests switch to blackhole
+ * mode to simulate a hung dependency. Timeouts and circuit breaker windows are shortened so each scenario
+ * runs in seconds. Every scenario checks that no request waits much longer than the client timeout, that
+ * requests fail with {@code 503 Service Unavailable} rather than hanging or failing with a 500, and that
+ * once the circuit breaker has opened requests are rejected without waiting at all.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+@Testcontainers
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class DependencyFaultTest {
+    private static final Duration CLIENT_TIMEOUT = Duration.ofMillis(300);
+    private static final Duration MARGIN = Duration.ofMillis(700);
+    private static final Duration FAST_FAILURE = Duration.ofMillis(100);
+    private static final int MINIMUM_NUMBER_OF_CALLS = 5;
+    private static final int REQUESTS = 30;
+
+    private static final CapturingSmtpServer SMTP = start(CapturingSmtpServer::new);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static FaultInjectingProxy postgresProxy;
+    private static FaultInjectingProxy redisProxy;
+    private static FaultInjectingProxy smtpProxy;
+
+    @BeforeAll
+    static void startProxies() {
+        postgresProxy = start(() -> new FaultInjectingProxy(postgres.getHost(), postgres.getFirstMappedPort()));
+        redisProxy = start(() -> new FaultInjectingProxy(redis.getHost(), redis.getFirstMappedPort()));
+        smtpProxy = start(() -> new FaultInjectingProxy("127.0.0.1", SMTP.getPort()));
+    }
+
+    @DynamicPropertySource
+    static void dependencyProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:postgresql://127.0.0.1:" + postgresProxy.getPort() + "/" + postgres.getDatabaseName());
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.connection-timeout", () -> 250);
+        registry.add("spring.datasource.hikari.data-source-properties.socketTimeout", () -> 1);
+        registry.add("spring.data.redis.host", () -> "127.0.0.1");
+        registry.add("spring.data.redis.port", redisProxy::getPort);
+        registry.add("spring.data.redis.timeout", () -> CLIENT_TIMEOUT.toMillis() + "ms");
+        registry.add("spring.mail.host", () -> "127.0.0.1");
+        registry.add("spring.mail.port", smtpProxy::getPort);
+        registry.add("spring.mail.properties.mail.smtp.timeout", () -> 1000);
+        registry.add("config.warmup.enabled", () -> false);
+        for (String dependency : List.of("redis", "postgres", "smtp")) {
+            registry.add("config.resilience." + dependency + ".sliding_window_size", () -> 10);
+            registry.add("config.resilience." + dependency + ".minimum_number_of_calls", () -> MINIMUM_NUMBER_OF_CALLS);
+            registry.add("config.resilience." + dependency + ".wait_in_open_state", () -> 60_000);
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final AtomicLong emailSequence = new AtomicLong();
+
+    @AfterEach
+    void healProxies() {
+        postgresProxy.pass();
+        redisProxy.pass();
+        smtpProxy.pass();
+    }
+
+    @AfterAll
+    static void stopStandIns() throws IOException {
+        postgresProxy.close();
+        redisProxy.close();
+        smtpProxy.close();
+        SMTP.close();
+    }
+
+    @Test
+    void redisOutageFailsFastWithServiceUnavailable() throws Exception {
+        assertEquals(200, requestVerification(nextEmail()).statusCode());
+
+        redisProxy.blackhole();
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = requestVerification(nextEmail());
+            latencies.add(System.nanoTime() - start);
+            assertEquals(503, response.statusCode());
+        }
+
+        assertBoundedAndFailingFast(latencies, CLIENT_TIMEOUT);
+        assertCircuitBreakerOpen("redis");
+    }
+
+    @Test
+    void postgresOutageFailsFastWithServiceUnavailable() throws Exception {
+        List<String[]> credentials = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            String email = nextEmail();
+            assertEquals(200, requestVerification(email).statusCode());
+            String code = SMTP.takeCode(email, 5_000);
+            assertNotNull(code, "No verification email for " + email);
+            credentials.add(new String[]{email, code});
+        }
+
+        postgresProxy.blackhole();
+        List<Long> latencies = new ArrayList<>();
+        for (String[] credential : credentials) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = post("/api/v1/auth/token",
+                    "{\"email\":\"" + credential[0] + "\",\"verification_code\":\"" + credential[1] + "\"}");
+            latencies.add(System.nanoTime() - start);
+            assertEquals(503, response.statusCode());
+        }
+
+        assertBoundedAndFailingFast(latencies, Duration.ofSeconds(1));
+        assertCircuitBreakerOpen("postgres");
+    }
+
+    @Test
+    void smtpOutageDoesNotSlowDownVerificationRequests() throws Exception {
+        smtpProxy.blackhole();
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = requestVerification(nextEmail());
+            latencies.add(System.nanoTime() - start);
+            assertEquals(200, response.statusCode());
+        }
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (circuitBreakerState("smtp") != 1.0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertCircuitBreakerOpen("smtp");
+
+        for (long latency : latencies) {
+            assertTrue(latency < CLIENT_TIMEOUT.toNanos(),
+                    "Verification request took " + Duration.ofNanos(latency).toMillis() + " ms while SMTP was down");
+        }
+    }
+
+    /**
+     * Asserts that no call waited much longer than the client timeout and that the calls made after
+     * the circuit breaker's minimum number of calls were rejected without waiting.
+     */
+    private static void assertBoundedAndFailingFast(List<Long> latencies, Duration timeout) {
+        long bound = timeout.plus(MARGIN).toNanos();
+        for (long latency : latencies) {
+            assertTrue(latency < bound, "Call took " + Duration.ofNanos(latency).toMillis() + " ms");
+        }
+        for (long latency : latencies.subList(MINIMUM_NUMBER_OF_CALLS + 1, latencies.size())) {
+            assertTrue(latency < FAST_FAILURE.toNanos(),
+                    "Call took " + Duration.ofNanos(latency).toMillis() + " ms after the circuit breaker should have opened");
+        }
+    }
+
+    private void assertCircuitBreakerOpen(String dependency) {
+        assertEquals(1.0, circuitBreakerState(dependency), "Circuit breaker for " + dependency + " is not open");
+    }
+
+    private double circuitBreakerState(String dependency) {
+        return meterRegistry.get("resilience4j.circuitbreaker.state")
+                .tag("name", dependency)
+                .tag("state", "open")
+                .gauge()
+                .value();
+    }
+
+    private String nextEmail() {
+        return "fault-" + emailSequence.incrementAndGet() + "@loadtest.local";
+    }
+
+    private HttpResponse<String> requestVerification(String email) throws IOException, InterruptedException {
+        return post("/api/v1/auth/request-verification", "{\"email\":\"" + email + "\"}");
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(10))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+
+    private static <T> T start(IoSupplier<T> supplier) {
+        try {
+            return supplier.get();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package fans.goldenglow.otpauth.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A TCP proxy that sits between the application and one of its dependencies during fault tests.
+ * <p>
+ * While passing, bytes are forwarded in both directions unchanged. While blackholed, connections stay
+ * open but every byte in either direction is dropped, which is how a dependency behind a network
+ * partition or a hung process looks to the client: nothing fails, nothing answers. Each direction of
+ * each connection is pumped on its own virtual thread.
+ */
+public class FaultInjectingProxy implements Closeable {
+    private final String upstreamHost;
+    private final int upstreamPort;
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private volatile boolean blackholed;
+
+    public FaultInjectingProxy(String upstreamHost, int upstreamPort) throws IOException {
+        this.upstreamHost = upstreamHost;
+        this.upstreamPort = upstreamPort;
+        serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        acceptor = Thread.ofPlatform().daemon().name("fault-proxy-" + upstreamPort).start(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Starts dropping all traffic, on existing and new connections alike.
+     */
+    public void blackhole() {
+        blackholed = true;
+    }
+
+    /**
+     * Resumes forwarding traffic.
+     */
+    public void pass() {
+        blackholed = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        acceptor.interrupt();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket downstream = serverSocket.accept();
+                Socket upstream = new Socket(upstreamHost, upstreamPort);
+                Thread.ofVirtual().start(() -> pump(downstream, upstream));
+                Thread.ofVirtual().start(() -> pump(upstream, downstream));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void pump(Socket from, Socket to) {
+        byte[] buffer = new byte[8192];
+        try (from; to) {
+            InputStream in = from.getInputStream();
+            OutputStream out = to.getOutputStream();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (!blackholed) {
+                    out.write(buffer, 0, read);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // One side closed the connection; closing both ends lets the other pump finish too.
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package fans.goldenglow.otpauth.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects request latencies and errors for one endpoint and summarises them as percentiles.
+ */
+class LatencyRecorder {
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errors;
+
+    synchronized void record(long latencyNanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+    }
+
+    synchronized void recordError() {
+        errors++;
+    }
+
+    /**
+     * Summarises the recorded latencies.
+     *
+     * @param elapsedSeconds the wall-clock duration of the run, used to compute throughput
+     * @return an ordered map of count, errors, throughput and latency percentiles in milliseconds
+     */
+    synchronized Map<String, Object> summarize(double elapsedSeconds) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", count);
+        summary.put("errors", errors);
+        summary.put("throughput_per_second", count / elapsedSeconds);
+        summary.put("p50_ms", percentile(sorted, 0.50));
+        summary.put("p95_ms", percentile(sorted, 0.95));
+        summary.put("p99_ms", percentile(sorted, 0.99));
+        summary.put("max_ms", count == 0 ? 0.0 : sorted[count - 1] / 1_000_000.0);
+        return summary;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
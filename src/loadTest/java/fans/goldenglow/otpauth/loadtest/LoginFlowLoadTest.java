@@ -0,0 +1,232 @@
+package fans.goldenglow.otpauth.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the full login flow against the application booted on local stand-ins and reports
+ * throughput and latency percentiles per endpoint.
+ * <p>
+ * PostgreSQL and Redis run in Testcontainers and email goes to a {@link CapturingSmtpServer}, from
+ * which each virtual user reads its code. One flow is: request a verification code, read it from the
+ * captured email, exchange it for tokens, fetch {@code /api/v1/user/me} and refresh the tokens.
+ * <p>
+ * The run is configured with the system properties {@code loadtest.concurrency},
+ * {@code loadtest.rate} (flows per second, 0 for unthrottled), {@code loadtest.duration} and
+ * {@code loadtest.warmup} (seconds), and writes a JSON report to {@code loadtest.output}. Setting
+ * {@code spring.threads.virtual.enabled} runs the application in virtual-thread mode for comparison.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+@Testcontainers
+class LoginFlowLoadTest {
+    private static final List<String> ENDPOINTS = List.of("request_verification", "token", "user_me", "token_refresh");
+    private static final CapturingSmtpServer SMTP = startSmtpServer();
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    @ServiceConnection(name = "redis")
+    static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    @DynamicPropertySource
+    static void smtpProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.mail.host", () -> "127.0.0.1");
+        registry.add("spring.mail.port", SMTP::getPort);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong flowSequence = new AtomicLong();
+
+    @AfterAll
+    static void stopSmtpServer() throws IOException {
+        SMTP.close();
+    }
+
+    @Test
+    void loginFlow() throws Exception {
+        int concurrency = Integer.getInteger("loadtest.concurrency", 16);
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "0"));
+        Duration duration = Duration.ofSeconds(Long.getLong("loadtest.duration", 30));
+        Duration warmup = Duration.ofSeconds(Long.getLong("loadtest.warmup", 5));
+        Path output = Path.of(System.getProperty("loadtest.output", "build/reports/load-test/results.json"));
+
+        run(concurrency, rate, warmup, null);
+
+        Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+        ENDPOINTS.forEach(endpoint -> recorders.put(endpoint, new LatencyRecorder()));
+        long start = System.nanoTime();
+        long completedFlows = run(concurrency, rate, duration, recorders);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        recorders.forEach((endpoint, recorder) -> endpoints.put(endpoint, recorder.summarize(elapsedSeconds)));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("virtual_threads", Boolean.getBoolean("spring.threads.virtual.enabled"));
+        report.put("concurrency", concurrency);
+        report.put("target_rate_per_second", rate);
+        report.put("duration_seconds", elapsedSeconds);
+        report.put("completed_flows", completedFlows);
+        report.put("flow_throughput_per_second", completedFlows / elapsedSeconds);
+        report.put("endpoints", endpoints);
+
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(output.toFile(), report);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+
+        assertTrue(completedFlows > 0, "No login flow completed");
+    }
+
+    /**
+     * Runs login flows on {@code concurrency} workers until the duration has passed.
+     *
+     * @param recorders the recorders to report latencies to, or null for an unrecorded warm-up
+     * @return the number of flows that completed successfully
+     */
+    private long run(int concurrency, double rate, Duration duration, Map<String, LatencyRecorder> recorders) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        long interval = rate > 0 ? (long) (1e9 / rate) : 0;
+        AtomicLong nextStart = new AtomicLong(System.nanoTime());
+        AtomicLong completedFlows = new AtomicLong();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(concurrency)) {
+            for (int i = 0; i < concurrency; i++) {
+                executor.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        if (interval > 0) {
+                            long wait = nextStart.getAndAdd(interval) - System.nanoTime();
+                            if (wait > 0) {
+                                LockSupport.parkNanos(wait);
+                            }
+                        }
+                        if (runFlow(recorders)) {
+                            completedFlows.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+        return completedFlows.get();
+    }
+
+    private boolean runFlow(Map<String, LatencyRecorder> recorders) {
+        String email = "load-" + flowSequence.incrementAndGet() + "@loadtest.local";
+        try {
+            if (send("request_verification", post("/api/v1/auth/request-verification",
+                    "{\"email\":\"" + email + "\"}"), recorders) == null) {
+                return false;
+            }
+
+            String verificationCode = SMTP.takeCode(email, 5_000);
+            if (verificationCode == null) {
+                return false;
+            }
+
+            JsonNode tokens = send("token", post("/api/v1/auth/token",
+                    "{\"email\":\"" + email + "\",\"verification_code\":\"" + verificationCode + "\"}"), recorders);
+            if (tokens == null) {
+                return false;
+            }
+
+            HttpRequest me = HttpRequest.newBuilder(uri("/api/v1/user/me"))
+                    .header("Authorization", "Bearer " + tokens.get("access_token").asText())
+                    .GET()
+                    .build();
+            if (send("user_me", me, recorders) == null) {
+                return false;
+            }
+
+            return send("token_refresh", post("/api/v1/auth/token/refresh",
+                    "{\"refresh_token\":\"" + tokens.get("refresh_token").asText() + "\"}"), recorders) != null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private JsonNode send(String endpoint, HttpRequest request, Map<String, LatencyRecorder> recorders) throws InterruptedException {
+        LatencyRecorder recorder = recorders == null ? null : recorders.get(endpoint);
+        try {
+            long start = System.nanoTime();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            long latency = System.nanoTime() - start;
+            if (response.statusCode() != 200) {
+                if (recorder != null) {
+                    recorder.recordError();
+                }
+                return null;
+            }
+            if (recorder != null) {
+                recorder.record(latency);
+            }
+            return response.body().isEmpty() ? objectMapper.createObjectNode() : objectMapper.readTree(response.body());
+        } catch (IOException e) {
+            if (recorder != null) {
+                recorder.recordError();
+            }
+            return null;
+        }
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + port + path);
+    }
+
+    private static CapturingSmtpServer startSmtpServer() {
+        try {
+            return new CapturingSmtpServer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
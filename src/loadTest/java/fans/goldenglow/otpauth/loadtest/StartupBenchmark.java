@@ -0,0 +1,165 @@
+package fans.goldenglow.otpauth.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Measures how long a freshly launched node takes to issue its first token, for the standard build
+ * and for the fast-start build (Spring AOT plus an AppCDS archive).
+ * <p>
+ * PostgreSQL and Redis run in Testcontainers and email goes to a {@link CapturingSmtpServer}. Each
+ * run starts the application in a new JVM and repeatedly requests a verification code until the
+ * node answers. It then exchanges the captured code and stops the clock when a token is returned.
+ * The standard build runs first so that it creates the schema the fast-start build expects.
+ * <p>
+ * Configured with the system properties {@code startup.java}, {@code startup.standardJar},
+ * {@code startup.fastStartDir}, {@code startup.runs} and {@code startup.output}, which the
+ * {@code startupBenchmark} Gradle task sets.
+ */
+public class StartupBenchmark {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final CapturingSmtpServer smtp;
+    private final List<String> infrastructureArgs;
+    private final String java;
+    private int sequence;
+
+    private StartupBenchmark(CapturingSmtpServer smtp, List<String> infrastructureArgs, String java) {
+        this.smtp = smtp;
+        this.infrastructureArgs = infrastructureArgs;
+        this.java = java;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String java = System.getProperty("startup.java", "java");
+        Path standardJar = Path.of(System.getProperty("startup.standardJar"));
+        Path fastStartDir = Path.of(System.getProperty("startup.fastStartDir"));
+        int runs = Integer.getInteger("startup.runs", 3);
+        Path output = Path.of(System.getProperty("startup.output", "build/reports/startup/results.json"));
+
+        try (PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+             GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+             CapturingSmtpServer smtp = new CapturingSmtpServer()) {
+            postgres.start();
+            redis.start();
+
+            List<String> infrastructureArgs = List.of(
+                    "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                    "--spring.datasource.username=" + postgres.getUsername(),
+                    "--spring.datasource.password=" + postgres.getPassword(),
+                    "--spring.data.redis.host=" + redis.getHost(),
+                    "--spring.data.redis.port=" + redis.getMappedPort(6379),
+                    "--spring.mail.host=127.0.0.1",
+                    "--spring.mail.port=" + smtp.getPort(),
+                    "--spring.mail.username=",
+                    "--spring.mail.password=",
+                    "--spring.mail.properties.mail.smtp.auth=false",
+                    "--spring.mail.properties.mail.smtp.starttls.enable=false",
+                    "--config.email.from=noreply@startup.local"
+            );
+            StartupBenchmark benchmark = new StartupBenchmark(smtp, infrastructureArgs, java);
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("timestamp", Instant.now().toString());
+            report.put("standard", benchmark.measure(runs, standardJar.getParent(), List.of(
+                    "-jar", standardJar.toString())));
+            report.put("fast_start", benchmark.measure(runs, fastStartDir, List.of(
+                    "-XX:SharedArchiveFile=application.jsa",
+                    "-Dspring.aot.enabled=true",
+                    "-jar", standardJar.getFileName().toString(),
+                    "--spring.profiles.active=fast-start")));
+
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            ObjectMapper objectMapper = new ObjectMapper();
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(output.toFile(), report);
+            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        }
+    }
+
+    private Map<String, Object> measure(int runs, Path workingDir, List<String> launchArgs) throws Exception {
+        List<Long> timesToFirstToken = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            timesToFirstToken.add(measureOnce(workingDir, launchArgs));
+        }
+        List<Long> sorted = new ArrayList<>(timesToFirstToken);
+        Collections.sort(sorted);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("runs_ms", timesToFirstToken);
+        result.put("median_ms", sorted.get(sorted.size() / 2));
+        result.put("min_ms", sorted.getFirst());
+        return result;
+    }
+
+    private long measureOnce(Path workingDir, List<String> launchArgs) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(launchArgs);
+        command.addAll(infrastructureArgs);
+        command.add("--server.port=" + port);
+        command.add("--management.server.port=0");
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(workingDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            String email = "startup-" + (++sequence) + "@startup.local";
+            long deadline = start + STARTUP_TIMEOUT.toNanos();
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with code " + process.exitValue());
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("No token within " + STARTUP_TIMEOUT);
+                }
+                if (post(port, "/api/v1/auth/request-verification", "{\"email\":\"" + email + "\"}")) {
+                    String code = smtp.takeCode(email, 10_000);
+                    if (code != null && post(port, "/api/v1/auth/token",
+                            "{\"email\":\"" + email + "\",\"verification_code\":\"" + code + "\"}")) {
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }
+                }
+                Thread.sleep(20);
+            }
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private boolean post(int port, String path, String body) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
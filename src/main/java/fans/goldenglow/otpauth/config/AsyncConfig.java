@@ -0,0 +1,79 @@
+package fans.goldenglow.otpauth.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Configuration class for asynchronous execution.
+ * <p>
+ * Verification emails are sent off the request thread on a dedicated, bounded pool of platform
+ * threads. Platform threads are used on purpose: Jakarta Mail blocks on sockets inside
+ * {@code synchronized} methods, which would pin the carrier threads if sends ran on virtual threads.
+ * When the queue is full the email is rejected in the submitting thread and counted in
+ * {@code otpauth.email.rejected}: the caller gets a {@link org.springframework.core.task.TaskRejectedException}
+ * and can report the overload, so a slow SMTP server never blocks a request thread and a request is never
+ * acknowledged for an email that will not be sent.
+ * <p>
+ * Batch token introspection verifies signatures on a separate pool with one platform thread per
+ * processor, since that work is CPU bound.
+ */
+@Slf4j
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+    @Value("${config.email.executor.pool_size}")
+    private int EMAIL_POOL_SIZE;
+    @Value("${config.email.executor.queue_capacity}")
+    private int EMAIL_QUEUE_CAPACITY;
+    @Value("${config.introspection.executor.queue_capacity}")
+    private int INTROSPECTION_QUEUE_CAPACITY;
+
+    /**
+     * Creates the executor used to send emails asynchronously.
+     * @param meterRegistry The MeterRegistry used to count emails rejected because the queue was full.
+     * @return A ThreadPoolTaskExecutor with a fixed number of threads and a bounded queue.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor emailTaskExecutor(MeterRegistry meterRegistry) {
+        Counter rejectedCounter = Counter.builder("otpauth.email.rejected")
+                .description("Number of emails rejected because the email queue was full")
+                .register(meterRegistry);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("email-");
+        executor.setCorePoolSize(EMAIL_POOL_SIZE);
+        executor.setMaxPoolSize(EMAIL_POOL_SIZE);
+        executor.setQueueCapacity(EMAIL_QUEUE_CAPACITY);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejectedCounter.increment();
+            log.warn("Email queue is full, rejecting email");
+            throw new RejectedExecutionException("Email queue is full");
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * Creates the executor used to verify large introspection batches in parallel.
+     * @return A ThreadPoolTaskExecutor with one thread per available processor and a bounded queue.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor introspectionTaskExecutor() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("introspection-");
+        executor.setCorePoolSize(processors);
+        executor.setMaxPoolSize(processors);
+        executor.setQueueCapacity(INTROSPECTION_QUEUE_CAPACITY);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+}
@@ -0,0 +1,88 @@
+package fans.goldenglow.otpauth.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Servlet filter that times the requests served during the first minute after the node becomes ready.
+ * <p>
+ * Latencies are recorded in the {@code otpauth.http.first_minute} timer, tagged with the matched
+ * endpoint and with {@code warmup=enabled} or {@code warmup=disabled} depending on
+ * {@code config.warmup.enabled}, so that nodes started with and without the JIT warm-up can be
+ * compared. The filter runs before Spring Security, so the timings include authentication.
+ * Actuator requests are not recorded.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FirstMinuteLatencyFilter extends OncePerRequestFilter {
+    @Value("${config.warmup.enabled}")
+    private boolean WARMUP_ENABLED;
+
+    private static final long FIRST_MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final MeterRegistry meterRegistry;
+    private volatile boolean ready;
+    private volatile long readyAt;
+
+    /**
+     * Constructs a FirstMinuteLatencyFilter instance with dependencies injected.
+     *
+     * @param meterRegistry the MeterRegistry used to record request latencies
+     */
+    @Autowired
+    public FirstMinuteLatencyFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Starts the one-minute recording window once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        readyAt = System.nanoTime();
+        ready = true;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !ready || request.getRequestURI().startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        if (start - readyAt > FIRST_MINUTE_NANOS) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            Timer.builder("otpauth.http.first_minute")
+                    .description("Latency of requests served in the first minute after the node became ready")
+                    .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                    .tag("warmup", WARMUP_ENABLED ? "enabled" : "disabled")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
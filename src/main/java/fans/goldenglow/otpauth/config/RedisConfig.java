@@ -1,31 +1,39 @@
 package fans.goldenglow.otpauth.config;
 
 import fans.goldenglow.otpauth.dto.VerificationCode;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 /**
  * Configuration class for setting up Redis integration within the application.
  * <p>
  * This class is responsible for creating a RedisTemplate bean, which is used to
  * interact with a Redis data store. The RedisTemplate is configured to work with
- * keys of type String and values of type VerificationCode.
+ * keys of type String and values of type VerificationCode. The connection factory is the one
+ * auto-configured by Spring Boot from the {@code spring.data.redis} properties.
+ * <p>
+ * When reference tokens are enabled, it also provides the listener container used to receive
+ * reference token revocations published by other nodes.
  */
 @Configuration
 public class RedisConfig {
 
-    @Bean
-    public RedisConnectionFactory connectionFactory() {
-        return new LettuceConnectionFactory();
-    }
-
     @Bean
     public RedisTemplate<String, VerificationCode> redisTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, VerificationCode> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
         return template;
     }
+
+    @Bean
+    @ConditionalOnProperty(name = "config.reference_token.enabled", havingValue = "true")
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
 }
@@ -0,0 +1,42 @@
+package fans.goldenglow.otpauth.config;
+
+import fans.goldenglow.otpauth.service.SchemaValidationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Health indicator reporting the outcome of the database schema check.
+ * <p>
+ * It is included in the readiness group, so the node reports itself out of service while the check
+ * is running and down if the schema does not match the entity mappings. When the check is disabled
+ * it always reports up.
+ */
+@Component
+public class SchemaHealthIndicator implements HealthIndicator {
+    private final SchemaValidationService schemaValidationService;
+
+    /**
+     * Constructor for the SchemaHealthIndicator class.
+     * @param schemaValidationService The SchemaValidationService whose result is reported.
+     */
+    @Autowired
+    public SchemaHealthIndicator(SchemaValidationService schemaValidationService) {
+        this.schemaValidationService = schemaValidationService;
+    }
+
+    /**
+     * Reports the result of the schema check.
+     * @return Up if the schema matches or the check is disabled, out of service while it runs, down otherwise.
+     */
+    @Override
+    public Health health() {
+        return switch (schemaValidationService.getResult()) {
+            case DISABLED -> Health.up().withDetail("validation", "disabled").build();
+            case PENDING -> Health.outOfService().withDetail("validation", "pending").build();
+            case VALID -> Health.up().build();
+            case INVALID -> Health.down().withDetail("error", String.valueOf(schemaValidationService.getFailure())).build();
+        };
+    }
+}
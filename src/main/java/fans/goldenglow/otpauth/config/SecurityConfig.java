@@ -1,16 +1,46 @@
 package fans.goldenglow.otpauth.config;
 
+import fans.goldenglow.otpauth.service.DependencyUnavailableException;
+import fans.goldenglow.otpauth.service.ReferenceTokenService;
 import fans.goldenglow.otpauth.service.SecurityService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementPortType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.ObjectPostProcessor;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
+import org.springframework.security.oauth2.server.resource.authentication.OpaqueTokenAuthenticationProvider;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenAuthenticationEntryPoint;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
+import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 import static org.springframework.security.oauth2.core.authorization.OAuth2AuthorizationManagers.hasScope;
 
@@ -25,20 +55,86 @@ import static org.springframework.security.oauth2.core.authorization.OAuth2Autho
  * - Defining and configuring the security filter chain for handling HTTP security.
  * - Setting up rules for request authorization based on request matchers and scopes.
  * - Configuring stateless session management for the application.
- * - Providing a JwtDecoder bean configured with a secret key from the SecurityService.
+ * - Providing a JwtDecoder bean configured with a secret key from the SecurityService,
+ *   with decoding timed through Micrometer.
+ * - Authenticating bearer tokens that look like a JWT with the JwtDecoder, and any other
+ *   bearer token as a reference token resolved by the ReferenceTokenService when reference
+ *   tokens are enabled. If the reference token store is unavailable, the request is answered with
+ *   503 Service Unavailable and Retry-After, like any other request that needs an unavailable dependency.
+ * - Keeping the health endpoints public and exposing the Prometheus endpoint only when actuator is
+ *   served on its own management port, which is not meant to be reachable from outside.
+ * - Requiring the introspection endpoint to be called with the introspection client credentials
+ *   over HTTP Basic, in a filter chain that is matched before the public authentication endpoints.
  */
+@Slf4j
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
+    @Value("${config.introspection.client.id}")
+    private String INTROSPECTION_CLIENT_ID;
+    @Value("${config.introspection.client.secret}")
+    private String INTROSPECTION_CLIENT_SECRET;
+
+    private static final String INTROSPECTION_PATH = "/api/v1/auth/token/introspect";
+    private static final String INTROSPECTION_CLIENT_AUTHORITY = "introspection_client";
+
     private final SecurityService securityService;
+    private final ReferenceTokenService referenceTokenService;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
 
     /**
      * Constructor for the SecurityConfig class.
      * @param securityService The SecurityService instance to be used by this class.
+     * @param referenceTokenService The ReferenceTokenService used to resolve reference access tokens, or null if
+     *                              reference tokens are disabled.
+     * @param meterRegistry The MeterRegistry used to time token verification.
+     * @param environment The Environment used to tell whether actuator runs on a separate management port.
      */
     @Autowired
-    public SecurityConfig(SecurityService securityService) {
+    public SecurityConfig(SecurityService securityService, @Nullable ReferenceTokenService referenceTokenService,
+                          MeterRegistry meterRegistry, Environment environment) {
         this.securityService = securityService;
+        this.referenceTokenService = referenceTokenService;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    /**
+     * Defines the security filter chain for the introspection endpoint.
+     * It is ordered before the main filter chain, so the endpoint is not covered by the public
+     * {@code /api/v1/auth/**} rule. Callers authenticate with HTTP Basic using
+     * {@code config.introspection.client.id} and {@code config.introspection.client.secret}.
+     * If no secret is configured, every request to the endpoint is denied.
+     * @param http The HttpSecurity instance to be configured.
+     * @return A SecurityFilterChain instance that only matches the introspection endpoint.
+     * @throws Exception If an error occurs during the configuration process.
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain introspectionSecurityFilterChain(HttpSecurity http) throws Exception {
+        boolean clientConfigured = INTROSPECTION_CLIENT_ID != null && !INTROSPECTION_CLIENT_ID.isBlank()
+                && INTROSPECTION_CLIENT_SECRET != null && !INTROSPECTION_CLIENT_SECRET.isBlank();
+        if (!clientConfigured) {
+            log.warn("No config.introspection.client credentials set, the introspection endpoint denies every request");
+        }
+        return http
+                .securityMatcher(INTROSPECTION_PATH)
+                .csrf(AbstractHttpConfigurer::disable)
+                .cors(AbstractHttpConfigurer::disable)
+                .authorizeHttpRequests(auth -> {
+                    if (clientConfigured) {
+                        auth.anyRequest().hasAuthority(INTROSPECTION_CLIENT_AUTHORITY);
+                    } else {
+                        auth.anyRequest().denyAll();
+                    }
+                })
+                .sessionManagement(session -> session
+                        .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                )
+                .authenticationManager(introspectionClientAuthenticationManager())
+                .httpBasic(Customizer.withDefaults())
+                .build();
     }
 
     /**
@@ -49,30 +145,121 @@ public class SecurityConfig {
      */
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        AuthenticationManager bearerTokenAuthenticationManager = bearerTokenAuthenticationManager();
+        boolean separateManagementPort = ManagementPortType.get(environment) == ManagementPortType.DIFFERENT;
         return http
                 .csrf(AbstractHttpConfigurer::disable)
                 .cors(AbstractHttpConfigurer::disable)
-                .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/v1/auth").authenticated()
-                        .requestMatchers("/api/v1/auth/**", "/public/**", "/error/**").permitAll()
-                        .requestMatchers("/api/v1/user/**").access(hasScope("profile"))
-                        .anyRequest().denyAll()
-                )
+                .authorizeHttpRequests(auth -> {
+                    auth
+                            .requestMatchers("/api/v1/auth").authenticated()
+                            .requestMatchers("/api/v1/auth/**", "/public/**", "/error/**").permitAll()
+                            .requestMatchers("/api/v1/user/**").access(hasScope("profile"))
+                            .requestMatchers("/actuator/health/**").permitAll();
+                    if (separateManagementPort) {
+                        auth.requestMatchers("/actuator/prometheus").permitAll();
+                    }
+                    auth.anyRequest().denyAll();
+                })
                 .sessionManagement(session -> session
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 )
                 .oauth2ResourceServer(oauth2 -> oauth2
-                        .jwt(jwt -> jwt.decoder(jwtDecoder()))
+                        .authenticationManagerResolver(request -> bearerTokenAuthenticationManager)
+                        .withObjectPostProcessor(new ObjectPostProcessor<BearerTokenAuthenticationFilter>() {
+                            @Override
+                            public <O extends BearerTokenAuthenticationFilter> O postProcess(O filter) {
+                                filter.setAuthenticationFailureHandler(bearerTokenAuthenticationFailureHandler());
+                                return filter;
+                            }
+                        })
                 )
                 .build();
     }
 
     /**
      * Creates a JwtDecoder bean configured with a secret key from the SecurityService.
+     * Every decode is recorded in the {@code otpauth.token.verify} timer.
      * @return A JwtDecoder instance configured with the secret key from the SecurityService.
      */
     @Bean
     public JwtDecoder jwtDecoder() {
-        return NimbusJwtDecoder.withSecretKey(securityService.getSecret()).build();
+        JwtDecoder jwtDecoder = NimbusJwtDecoder.withSecretKey(securityService.getSecret()).build();
+        Timer tokenVerifyTimer = Timer.builder("otpauth.token.verify")
+                .description("Time spent verifying a JWT")
+                .register(meterRegistry);
+        return token -> tokenVerifyTimer.record(() -> jwtDecoder.decode(token));
+    }
+
+    /**
+     * Creates the AuthenticationManager for the introspection client.
+     * The client id and secret are compared in constant time, so the comparison does not reveal how
+     * much of a guess was right.
+     * @return An AuthenticationManager that only accepts the configured introspection client.
+     */
+    private AuthenticationManager introspectionClientAuthenticationManager() {
+        byte[] expectedId = INTROSPECTION_CLIENT_ID.getBytes(StandardCharsets.UTF_8);
+        byte[] expectedSecret = INTROSPECTION_CLIENT_SECRET.getBytes(StandardCharsets.UTF_8);
+        return authentication -> {
+            byte[] id = authentication.getName().getBytes(StandardCharsets.UTF_8);
+            byte[] secret = String.valueOf(authentication.getCredentials()).getBytes(StandardCharsets.UTF_8);
+            boolean idMatches = MessageDigest.isEqual(expectedId, id);
+            boolean secretMatches = MessageDigest.isEqual(expectedSecret, secret);
+            if (expectedSecret.length == 0 || !idMatches || !secretMatches) {
+                throw new BadCredentialsException("Invalid introspection client credentials");
+            }
+            return UsernamePasswordAuthenticationToken.authenticated(authentication.getName(), null,
+                    AuthorityUtils.createAuthorityList(INTROSPECTION_CLIENT_AUTHORITY));
+        };
+    }
+
+    /**
+     * Creates the AuthenticationManager for bearer tokens.
+     * A JWT always has two dots, which never occur in a reference token, so each token is sent
+     * straight to the matching provider without trying the other one first. When reference tokens
+     * are disabled, any token that is not a JWT is rejected without a lookup. A reference token lookup
+     * rejected by the ResilienceService fails with an AuthenticationServiceException, so the failure is
+     * handled by the bearer token filter instead of escaping as a 500.
+     * @return An AuthenticationManager that accepts JWTs and, when enabled, reference tokens.
+     */
+    private AuthenticationManager bearerTokenAuthenticationManager() {
+        JwtAuthenticationProvider jwtAuthenticationProvider = new JwtAuthenticationProvider(jwtDecoder());
+        OpaqueTokenAuthenticationProvider referenceTokenAuthenticationProvider = referenceTokenService != null
+                ? new OpaqueTokenAuthenticationProvider(referenceTokenService)
+                : null;
+        return authentication -> {
+            String token = ((BearerTokenAuthenticationToken) authentication).getToken();
+            if (token.indexOf('.') >= 0) {
+                return jwtAuthenticationProvider.authenticate(authentication);
+            }
+            if (referenceTokenAuthenticationProvider == null) {
+                throw new InvalidBearerTokenException("Reference tokens are not enabled");
+            }
+            try {
+                return referenceTokenAuthenticationProvider.authenticate(authentication);
+            } catch (DependencyUnavailableException e) {
+                throw new AuthenticationServiceException(e.getMessage(), e);
+            }
+        };
+    }
+
+    /**
+     * Creates the failure handler of the bearer token filter.
+     * An AuthenticationServiceException means the token could not be checked, not that it is invalid,
+     * so it is answered with 503 Service Unavailable and a Retry-After header. Every other failure is
+     * answered with 401 Unauthorized by the default bearer token entry point.
+     * @return An AuthenticationFailureHandler for bearer token authentication.
+     */
+    private AuthenticationFailureHandler bearerTokenAuthenticationFailureHandler() {
+        AuthenticationEntryPoint entryPoint = new BearerTokenAuthenticationEntryPoint();
+        return (request, response, exception) -> {
+            if (exception instanceof AuthenticationServiceException) {
+                log.warn("Could not authenticate bearer token: {}", exception.getMessage());
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                return;
+            }
+            entryPoint.commence(request, response, exception);
+        };
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ import fans.goldenglow.otpauth.service.EmailService;
 import fans.goldenglow.otpauth.service.TokenService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -52,6 +53,8 @@ public class AuthController {
      *
      * @param request The EmailVerificationRequest object containing the email address to request a verification code for.
      * @return A 200 OK response if the verification code was successfully sent, or a 400 Bad Request response if the email address is invalid.
+     * @throws TaskRejectedException if the email queue is full; the code is withdrawn first, and the request
+     *                               is answered with 503 Service Unavailable by the DependencyExceptionHandler.
      */
     @PostMapping("/request-verification")
     public ResponseEntity<Void> requestVerification(@Valid @RequestBody EmailVerificationRequest request) {
@@ -63,7 +66,12 @@ public class AuthController {
             return ResponseEntity.badRequest().build();
         }
 
-        emailService.sendVerificationEmail(email, verificationCode);
+        try {
+            emailService.sendVerificationEmail(email, verificationCode);
+        } catch (TaskRejectedException e) {
+            tokenService.withdrawVerificationCode(email);
+            throw e;
+        }
 
         return ResponseEntity.ok().build();
     }
@@ -0,0 +1,70 @@
+package fans.goldenglow.otpauth.controller;
+
+import fans.goldenglow.otpauth.service.DependencyUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * The {@code DependencyExceptionHandler} class translates failures of Redis or PostgreSQL into
+ * {@code 503 Service Unavailable} responses.
+ * <p>
+ * This covers calls rejected by an open circuit breaker or a full bulkhead, calls that timed out or
+ * could not connect, and emails rejected because the email queue is full, so clients can tell a
+ * temporary outage from a bad request and retry.
+ */
+@Slf4j
+@RestControllerAdvice
+public class DependencyExceptionHandler {
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    /**
+     * Handles calls that were rejected without reaching the dependency.
+     *
+     * @param e The exception raised by the ResilienceService.
+     * @return A 503 Service Unavailable response with a Retry-After header.
+     */
+    @ExceptionHandler(DependencyUnavailableException.class)
+    public ResponseEntity<Void> handleDependencyUnavailable(DependencyUnavailableException e) {
+        log.warn("Rejected call to {}: {}", e.getDependency().getKey(), e.getCause().getMessage());
+        return serviceUnavailable();
+    }
+
+    /**
+     * Handles calls that reached a dependency but timed out or could not connect.
+     *
+     * @param e The exception raised by the data access layer.
+     * @return A 503 Service Unavailable response with a Retry-After header.
+     */
+    @ExceptionHandler({TransientDataAccessException.class, DataAccessResourceFailureException.class,
+            CannotCreateTransactionException.class})
+    public ResponseEntity<Void> handleDependencyFailure(RuntimeException e) {
+        log.error("Dependency call failed", e);
+        return serviceUnavailable();
+    }
+
+    /**
+     * Handles emails that were rejected because the email queue is full.
+     *
+     * @param e The exception raised by the email executor.
+     * @return A 503 Service Unavailable response with a Retry-After header.
+     */
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<Void> handleTaskRejected(TaskRejectedException e) {
+        log.warn("Rejected task: {}", e.getMessage());
+        return serviceUnavailable();
+    }
+
+    private static ResponseEntity<Void> serviceUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .build();
+    }
+}
@@ -1,39 +1,70 @@
 package fans.goldenglow.otpauth.controller;
 
+import fans.goldenglow.otpauth.dto.IntrospectionRequest;
+import fans.goldenglow.otpauth.dto.IntrospectionResponse;
 import fans.goldenglow.otpauth.dto.RefreshTokenRequest;
+import fans.goldenglow.otpauth.dto.RevokeTokenRequest;
 import fans.goldenglow.otpauth.dto.TokenRequest;
 import fans.goldenglow.otpauth.dto.TokenResponse;
+import fans.goldenglow.otpauth.dto.TotpTokenRequest;
+import fans.goldenglow.otpauth.service.DependencyUnavailableException;
+import fans.goldenglow.otpauth.service.ExchangeInProgressException;
+import fans.goldenglow.otpauth.service.IntrospectionService;
+import fans.goldenglow.otpauth.service.ReferenceTokenService;
+import fans.goldenglow.otpauth.service.TokenExchangeService;
 import fans.goldenglow.otpauth.service.TokenService;
+import fans.goldenglow.otpauth.service.TotpService;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
 
 /**
  * TokenController acts as a REST controller for managing authentication tokens.
- * It provides endpoints for exchanging and refreshing tokens, integrating with the TokenService for core logic.
+ * It provides endpoints for exchanging, refreshing, introspecting and revoking tokens, integrating with the TokenService for core logic.
  */
 @Slf4j
 @RestController
 @RequestMapping("/api/v1/auth/token")
 public class TokenController {
     private final TokenService tokenService;
+    private final TokenExchangeService tokenExchangeService;
+    private final TotpService totpService;
+    private final IntrospectionService introspectionService;
+    private final ReferenceTokenService referenceTokenService;
 
     /**
      * Constructor for the TokenController class.
      * @param tokenService The TokenService instance to be used by this controller.
+     * @param tokenExchangeService The TokenExchangeService instance to be used by this controller.
+     * @param totpService The TotpService instance to be used by this controller.
+     * @param introspectionService The IntrospectionService instance to be used by this controller.
+     * @param referenceTokenService The ReferenceTokenService instance to be used by this controller, or null if
+     *                              reference tokens are disabled.
      */
     @Autowired
-    public TokenController(TokenService tokenService) {
+    public TokenController(TokenService tokenService, TokenExchangeService tokenExchangeService, TotpService totpService,
+                           IntrospectionService introspectionService,
+                           @Nullable ReferenceTokenService referenceTokenService) {
         this.tokenService = tokenService;
+        this.tokenExchangeService = tokenExchangeService;
+        this.totpService = totpService;
+        this.introspectionService = introspectionService;
+        this.referenceTokenService = referenceTokenService;
     }
 
     /**
      * Exchanges a verification code for authentication tokens.
      * This method validates the provided email and verification code. If the validation succeeds,
      * it generates and returns a new access token and refresh token. If the validation fails,
-     * it responds with a bad request status.
+     * it responds with a bad request status. A retry of a successful exchange within the
+     * idempotency window receives the same tokens again, and a retry while the first exchange is
+     * still running waits for its tokens.
      *
      * @param token The TokenRequest object containing the user's email and verification code.
      * @return A ResponseEntity containing a TokenResponse with the generated tokens if the
@@ -41,7 +72,38 @@ public class TokenController {
      */
     @PostMapping
     public ResponseEntity<TokenResponse> exchangeToken(@Valid @RequestBody TokenRequest token) {
-        boolean verificationResult = tokenService.validateVerificationCode(token.getEmail(), token.getVerificationCode());
+        TokenResponse tokenResponse = tokenExchangeService.exchange(token.getEmail(), token.getVerificationCode());
+        if (tokenResponse != null) {
+            return ResponseEntity.ok(tokenResponse);
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Handles a retried exchange whose first attempt is still running after the retry waited for it.
+     *
+     * @return A 409 Conflict response with a Retry-After header.
+     */
+    @ExceptionHandler(ExchangeInProgressException.class)
+    public ResponseEntity<Void> handleExchangeInProgress() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
+
+    /**
+     * Exchanges an authenticator app (TOTP) code for authentication tokens.
+     * This path is only available to users with a confirmed enrolment and does not use the
+     * verification code store or send any email.
+     *
+     * @param token The TotpTokenRequest object containing the user's email and TOTP code.
+     * @return A ResponseEntity containing a TokenResponse with the generated tokens if the
+     *         code is valid, or a bad request status if validation fails.
+     */
+    @PostMapping("/totp")
+    public ResponseEntity<TokenResponse> exchangeTotpToken(@Valid @RequestBody TotpTokenRequest token) {
+        boolean verificationResult = totpService.validateTotpCode(token.getEmail(), token.getTotpCode());
         if (verificationResult) {
             return ResponseEntity.ok(tokenService.generateTokens(token.getEmail()));
         } else {
@@ -53,7 +115,8 @@ public class TokenController {
      * Refreshes the authentication tokens based on the provided refresh token.
      * This endpoint accepts a refresh token and validates it using the TokenService.
      * If valid, it returns a new access token and refresh token. If validation fails,
-     * a bad request response is returned.
+     * a bad request response is returned. If Redis or PostgreSQL is unavailable, the failure is
+     * left to the DependencyExceptionHandler, which responds with service unavailable.
      *
      * @param refreshTokenRequest The request object containing the refresh token to be validated and used for generating new tokens.
      * @return A ResponseEntity containing a TokenResponse object with the new tokens if the operation is successful,
@@ -64,9 +127,44 @@ public class TokenController {
         String refreshToken = refreshTokenRequest.getRefreshToken();
         try {
             return ResponseEntity.ok(tokenService.refreshToken(refreshToken));
+        } catch (DependencyUnavailableException | DataAccessException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to refresh token", e);
             return ResponseEntity.badRequest().build();
         }
     }
+
+    /**
+     * Introspects a batch of up to 100 tokens.
+     * Each token is reported as active with its subject, scopes and expiry, or as inactive if it is
+     * invalid or expired. Results are returned in the order the tokens were given.
+     * Only the introspection client may call this endpoint, see
+     * {@link fans.goldenglow.otpauth.config.SecurityConfig#introspectionSecurityFilterChain}.
+     *
+     * @param introspectionRequest The request object containing the tokens to introspect.
+     * @return A ResponseEntity containing an IntrospectionResponse with one result per token.
+     */
+    @PostMapping("/introspect")
+    public ResponseEntity<IntrospectionResponse> introspect(@Valid @RequestBody IntrospectionRequest introspectionRequest) {
+        return ResponseEntity.ok(new IntrospectionResponse(introspectionService.introspect(introspectionRequest.getTokens())));
+    }
+
+    /**
+     * Revokes a reference access token on every node.
+     * As in RFC 7009, the response is 200 OK whether or not the token existed, so the endpoint cannot
+     * be used to probe for valid tokens. JWTs cannot be revoked and are left to expire, and nothing is
+     * revoked while reference tokens are disabled.
+     *
+     * @param revokeTokenRequest The request object containing the token to revoke.
+     * @return A 200 OK response.
+     */
+    @PostMapping("/revoke")
+    public ResponseEntity<Void> revoke(@Valid @RequestBody RevokeTokenRequest revokeTokenRequest) {
+        String token = revokeTokenRequest.getToken();
+        if (referenceTokenService != null && token.indexOf('.') < 0) {
+            referenceTokenService.revoke(token);
+        }
+        return ResponseEntity.ok().build();
+    }
 }
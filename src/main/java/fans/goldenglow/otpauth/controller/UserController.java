@@ -1,13 +1,16 @@
 package fans.goldenglow.otpauth.controller;
 
+import fans.goldenglow.otpauth.dto.TotpCodeRequest;
+import fans.goldenglow.otpauth.dto.TotpEnrollmentResponse;
 import fans.goldenglow.otpauth.model.User;
+import fans.goldenglow.otpauth.service.TotpService;
 import fans.goldenglow.otpauth.service.UserService;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
 
 import java.util.Optional;
 
@@ -16,35 +19,84 @@ import java.util.Optional;
  * This controller interacts with the UserService to retrieve user information.
  * <p>
  * The base API endpoint for this controller is /api/v1/user.
- * This class includes operations such as retrieving the authenticated user's information.
+ * This class includes operations such as retrieving the authenticated user's information
+ * and enrolling an authenticator app for TOTP login.
  */
 @RestController
 @RequestMapping("/api/v1/user")
 public class UserController {
     private final UserService userService;
+    private final TotpService totpService;
 
     /**
      * Constructor for the UserController class.
      *
      * @param userService The UserService instance to be used by this controller.
+     * @param totpService The TotpService instance to be used by this controller.
      */
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, TotpService totpService) {
         this.userService = userService;
+        this.totpService = totpService;
     }
 
     /**
      * Retrieves information about the currently authenticated user.
-     * The user information is extracted based on the JWT authentication token provided in the request.
+     * The user is identified by the subject of the access token, which may be a JWT or a reference token.
      *
-     * @param jwtAuthenticationToken The JwtAuthenticationToken containing the authentication information of the current user.
+     * @param authentication The Authentication of the current user, named after the access token's subject.
      * @return A ResponseEntity containing the User object if the user is found,
      * or a 404 Not Found response if the user is not found in the database.
      */
     @GetMapping("/me")
-    public ResponseEntity<User> getSelf(JwtAuthenticationToken jwtAuthenticationToken) {
-        Long userId = Long.parseLong(jwtAuthenticationToken.getToken().getSubject());
+    public ResponseEntity<User> getSelf(Authentication authentication) {
+        Long userId = Long.parseLong(authentication.getName());
         Optional<User> user = userService.findById(userId);
         return user.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
+
+    /**
+     * Starts an authenticator app enrolment for the currently authenticated user.
+     * The returned provisioning URI can be rendered as a QR code; the enrolment stays inactive
+     * until it is confirmed with a code from the app.
+     *
+     * @param authentication The Authentication of the current user, named after the access token's subject.
+     * @return A ResponseEntity containing the secret and provisioning URI,
+     * a 409 Conflict response if the user already has a confirmed enrolment,
+     * or a 404 Not Found response if the user is not found in the database.
+     */
+    @PostMapping("/me/totp")
+    public ResponseEntity<TotpEnrollmentResponse> enrollTotp(Authentication authentication) {
+        Long userId = Long.parseLong(authentication.getName());
+        Optional<User> user = userService.findById(userId);
+        if (user.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        TotpEnrollmentResponse enrollment = totpService.enroll(user.get());
+        if (enrollment == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok(enrollment);
+    }
+
+    /**
+     * Confirms the pending authenticator app enrolment of the currently authenticated user.
+     *
+     * @param authentication The Authentication of the current user, named after the access token's subject.
+     * @param request The TotpCodeRequest containing a code generated by the authenticator app.
+     * @return A 200 OK response if the enrolment was confirmed, a 400 Bad Request response if the code is invalid,
+     * or a 404 Not Found response if the user is not found in the database.
+     */
+    @PostMapping("/me/totp/confirm")
+    public ResponseEntity<Void> confirmTotp(Authentication authentication, @Valid @RequestBody TotpCodeRequest request) {
+        Long userId = Long.parseLong(authentication.getName());
+        Optional<User> user = userService.findById(userId);
+        if (user.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!totpService.confirmEnrollment(user.get(), request.getTotpCode())) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok().build();
+    }
 }
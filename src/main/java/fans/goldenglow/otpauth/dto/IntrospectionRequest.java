@@ -0,0 +1,23 @@
+package fans.goldenglow.otpauth.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Represents a request to introspect a batch of tokens.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class IntrospectionRequest {
+    @JsonProperty("tokens")
+    @NotEmpty
+    @Size(max = 100)
+    private List<String> tokens;
+}
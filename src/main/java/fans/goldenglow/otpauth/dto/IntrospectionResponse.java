@@ -0,0 +1,19 @@
+package fans.goldenglow.otpauth.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Represents the introspection results for a batch of tokens, in the order they were requested.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class IntrospectionResponse {
+    @JsonProperty("results")
+    private List<TokenIntrospection> results;
+}
@@ -0,0 +1,21 @@
+package fans.goldenglow.otpauth.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Represents the claims of a reference access token, as stored in Redis.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class ReferenceTokenClaims {
+    @JsonProperty("sub")
+    private String subject;
+    @JsonProperty("scope")
+    private String scope;
+    @JsonProperty("exp")
+    private long expiresAt;
+}
@@ -0,0 +1,19 @@
+package fans.goldenglow.otpauth.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Represents a request to revoke an access token.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class RevokeTokenRequest {
+    @JsonProperty("token")
+    @NotBlank
+    private String token;
+}
@@ -0,0 +1,26 @@
+package fans.goldenglow.otpauth.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Represents the introspection result for a single token, using the RFC 7662 member names.
+ * Only {@code active} is present for tokens that are invalid or expired.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TokenIntrospection {
+    @JsonProperty("active")
+    private boolean active;
+    @JsonProperty("sub")
+    private String subject;
+    @JsonProperty("scope")
+    private String scope;
+    @JsonProperty("exp")
+    private Long expiresAt;
+}
@@ -0,0 +1,19 @@
+package fans.goldenglow.otpauth.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Represents a request to confirm an authenticator app enrolment with a TOTP code.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class TotpCodeRequest {
+    @JsonProperty("totp_code")
+    @Pattern(regexp = "\\d{6,8}")
+    private String totpCode;
+}
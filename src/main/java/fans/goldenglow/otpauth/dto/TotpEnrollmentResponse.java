@@ -0,0 +1,21 @@
+package fans.goldenglow.otpauth.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Represents the result of starting an authenticator app enrolment.
+ * <p>
+ * The provisioning URI is the payload to render as a QR code; the secret is provided for manual entry.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class TotpEnrollmentResponse {
+    @JsonProperty("secret")
+    private String secret;
+    @JsonProperty("provisioning_uri")
+    private String provisioningUri;
+}
@@ -0,0 +1,23 @@
+package fans.goldenglow.otpauth.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Represents a request for generating authentication tokens with an authenticator app code.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class TotpTokenRequest {
+    @JsonProperty("email")
+    @Email
+    private String email;
+    @JsonProperty("totp_code")
+    @Pattern(regexp = "\\d{6,8}")
+    private String totpCode;
+}
@@ -0,0 +1,20 @@
+package fans.goldenglow.otpauth.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a verification code is requested for an email address.
+ */
+@Name("fans.goldenglow.otpauth.CodeIssue")
+@Label("Verification Code Issue")
+@Description("Creation and storage of an email verification code")
+public class CodeIssueEvent extends AuthEvent {
+    @Label("Email Domain")
+    public String emailDomain;
+
+    @Label("Issued")
+    @Description("Whether a new code was issued, false if the request was refused")
+    public boolean issued;
+}
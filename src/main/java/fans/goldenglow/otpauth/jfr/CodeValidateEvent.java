@@ -0,0 +1,23 @@
+package fans.goldenglow.otpauth.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a verification code or an authenticator app code is validated.
+ */
+@Name("fans.goldenglow.otpauth.CodeValidate")
+@Label("Code Validation")
+@Description("Validation of a verification or TOTP code")
+public class CodeValidateEvent extends AuthEvent {
+    @Label("Email Domain")
+    public String emailDomain;
+
+    @Label("Method")
+    @Description("The kind of code validated, either email or totp")
+    public String method;
+
+    @Label("Valid")
+    public boolean valid;
+}
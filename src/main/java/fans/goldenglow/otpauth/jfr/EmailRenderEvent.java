@@ -0,0 +1,16 @@
+package fans.goldenglow.otpauth.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when an email template is rendered.
+ */
+@Name("fans.goldenglow.otpauth.EmailRender")
+@Label("Email Render")
+@Description("Rendering of an email template")
+public class EmailRenderEvent extends AuthEvent {
+    @Label("Template")
+    public String template;
+}
@@ -0,0 +1,19 @@
+package fans.goldenglow.otpauth.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when an email is handed to the mail server.
+ */
+@Name("fans.goldenglow.otpauth.EmailSend")
+@Label("Email Send")
+@Description("Sending of an email over SMTP")
+public class EmailSendEvent extends AuthEvent {
+    @Label("Email Domain")
+    public String emailDomain;
+
+    @Label("Sent")
+    public boolean sent;
+}
@@ -0,0 +1,16 @@
+package fans.goldenglow.otpauth.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a JWT is signed.
+ */
+@Name("fans.goldenglow.otpauth.TokenMint")
+@Label("Token Mint")
+@Description("Signing of a JWT")
+public class TokenMintEvent extends AuthEvent {
+    @Label("Scope")
+    public String scope;
+}
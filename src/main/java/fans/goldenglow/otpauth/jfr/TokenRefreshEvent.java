@@ -0,0 +1,16 @@
+package fans.goldenglow.otpauth.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a refresh token is exchanged for new tokens.
+ */
+@Name("fans.goldenglow.otpauth.TokenRefresh")
+@Label("Token Refresh")
+@Description("Exchange of a refresh token for new tokens")
+public class TokenRefreshEvent extends AuthEvent {
+    @Label("Success")
+    public boolean success;
+}
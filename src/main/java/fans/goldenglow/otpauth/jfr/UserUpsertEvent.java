@@ -0,0 +1,16 @@
+package fans.goldenglow.otpauth.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a user is created or their last login is updated before tokens are minted.
+ */
+@Name("fans.goldenglow.otpauth.UserUpsert")
+@Label("User Upsert")
+@Description("Creation or update of a user on login, including the transaction commit")
+public class UserUpsertEvent extends AuthEvent {
+    @Label("Email Domain")
+    public String emailDomain;
+}
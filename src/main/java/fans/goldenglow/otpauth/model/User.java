@@ -1,5 +1,6 @@
 package fans.goldenglow.otpauth.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -8,6 +9,9 @@ import java.time.LocalDateTime;
 /**
  * Represents a user entity in the system. This class is mapped to the "users" table in the database.
  * It includes fields for identifying and managing user data such as email, creation timestamp, last login timestamp, and active status.
+ * Users who enrol an authenticator app additionally carry a TOTP secret, the time the enrolment was confirmed,
+ * the last accepted TOTP time step, which stops a code from being used twice, and the count of failed TOTP
+ * logins, which locks TOTP logins for a while once it reaches the configured limit.
  * <p>
  * The {@code User} class uses JPA annotations to define the database schema mappings and utilizes Lombok annotations
  * for boilerplate code generation such as getters and setters.
@@ -34,6 +38,25 @@ public class User {
     @Column
     private boolean active = true;
 
+    @JsonIgnore
+    @Column(name = "totp_secret")
+    private String totpSecret;
+
+    @Column(name = "totp_confirmed_at")
+    private LocalDateTime totpConfirmedAt;
+
+    @JsonIgnore
+    @Column(name = "totp_last_step")
+    private Long totpLastStep;
+
+    @JsonIgnore
+    @Column(name = "totp_failed_attempts")
+    private Integer totpFailedAttempts;
+
+    @JsonIgnore
+    @Column(name = "totp_locked_until")
+    private LocalDateTime totpLockedUntil;
+
     /**
      * Constructor for the User class.
      * @param email The email address of the user.
@@ -42,4 +65,12 @@ public class User {
         this.email = email;
         this.createdAt = LocalDateTime.now();
     }
+
+    /**
+     * Checks whether the user has a confirmed authenticator app enrolment.
+     * @return {@code true} if a TOTP secret is stored and its enrolment has been confirmed, {@code false} otherwise.
+     */
+    public boolean isTotpEnabled() {
+        return totpSecret != null && totpConfirmedAt != null;
+    }
 }
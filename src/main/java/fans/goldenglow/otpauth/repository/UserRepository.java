@@ -2,8 +2,12 @@ package fans.goldenglow.otpauth.repository;
 
 import fans.goldenglow.otpauth.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 /**
@@ -18,4 +22,36 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
+
+    /**
+     * Records a TOTP time step as the last one accepted for a user, unless the same or a later step
+     * has already been accepted. The check and the update are a single statement, so two nodes
+     * cannot both accept the same step. Recording a step also clears the failed attempt count.
+     *
+     * @param id the ID of the user
+     * @param step the accepted time step
+     * @return the number of updated rows, 1 if the step was recorded and 0 if it was not newer
+     */
+    @Modifying
+    @Query("update User u set u.totpLastStep = :step, u.totpFailedAttempts = 0 " +
+            "where u.id = :id and (u.totpLastStep is null or u.totpLastStep < :step)")
+    int advanceTotpLastStep(@Param("id") Long id, @Param("step") long step);
+
+    /**
+     * Counts a failed TOTP login for a user. When the count reaches the limit, it is cleared and
+     * TOTP logins are locked until the given time. The increment is a single statement, so failures
+     * on different nodes are all counted.
+     *
+     * @param id the ID of the user
+     * @param maxAttempts the number of failed attempts that locks TOTP logins
+     * @param lockedUntil the time until which TOTP logins are locked once the limit is reached
+     * @return the number of updated rows
+     */
+    @Modifying
+    @Query("update User u set " +
+            "u.totpLockedUntil = case when coalesce(u.totpFailedAttempts, 0) + 1 >= :maxAttempts then :lockedUntil else u.totpLockedUntil end, " +
+            "u.totpFailedAttempts = case when coalesce(u.totpFailedAttempts, 0) + 1 >= :maxAttempts then 0 else coalesce(u.totpFailedAttempts, 0) + 1 end " +
+            "where u.id = :id")
+    int recordTotpFailure(@Param("id") Long id, @Param("maxAttempts") int maxAttempts,
+                          @Param("lockedUntil") LocalDateTime lockedUntil);
 }
@@ -0,0 +1,23 @@
+package fans.goldenglow.otpauth.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a call to an external dependency is rejected without being attempted, because the
+ * dependency's circuit breaker is open or its bulkhead is full.
+ */
+@Getter
+public class DependencyUnavailableException extends RuntimeException {
+    private final ResilienceService.Dependency dependency;
+
+    /**
+     * Constructs a DependencyUnavailableException for the given dependency.
+     *
+     * @param dependency the dependency that was not called
+     * @param cause the rejection raised by the bulkhead or circuit breaker
+     */
+    public DependencyUnavailableException(ResilienceService.Dependency dependency, Throwable cause) {
+        super(dependency.getKey() + " is unavailable", cause);
+        this.dependency = dependency;
+    }
+}
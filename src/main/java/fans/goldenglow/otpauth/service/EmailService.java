@@ -1,28 +1,43 @@
 package fans.goldenglow.otpauth.service;
 
+import fans.goldenglow.otpauth.jfr.AuthEvent;
+import fans.goldenglow.otpauth.jfr.EmailRenderEvent;
+import fans.goldenglow.otpauth.jfr.EmailSendEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.SMTP;
+
 /**
  * Service class for handling email-related operations.
  * <p>
  * This class is responsible for sending verification emails to users with a
  * templated body using Thymeleaf. It utilizes JavaMailSender for sending email
  * messages and integrates with a template engine to construct email contents.
+ * Template rendering and SMTP sending are timed separately through Micrometer and emit
+ * Java Flight Recorder events. Sending goes through the {@link ResilienceService}, so while the SMTP
+ * server is failing, emails are dropped and logged immediately instead of tying up threads.
  */
 @Slf4j
 @Service
 public class EmailService {
     private final JavaMailSender javaMailSender;
     private final TemplateEngine templateEngine;
+    private final ResilienceService resilienceService;
+    private final Timer renderTimer;
+    private final Timer sendTimer;
 
     @Value("${config.email.from}")
     private String emailFrom;
@@ -38,22 +53,37 @@ public class EmailService {
      *
      * @param javaMailSender the JavaMailSender instance used to send emails
      * @param templateEngine the TemplateEngine instance used to process email templates
+     * @param resilienceService the ResilienceService that guards calls to the SMTP server
+     * @param meterRegistry the MeterRegistry used to time rendering and sending
      */
     @Autowired
-    public EmailService(JavaMailSender javaMailSender, TemplateEngine templateEngine) {
+    public EmailService(JavaMailSender javaMailSender, TemplateEngine templateEngine,
+                        ResilienceService resilienceService, MeterRegistry meterRegistry) {
         this.javaMailSender = javaMailSender;
         this.templateEngine = templateEngine;
+        this.resilienceService = resilienceService;
+        this.renderTimer = Timer.builder("otpauth.email.render")
+                .description("Time spent rendering email templates")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("otpauth.email.send")
+                .description("Time spent sending email over SMTP")
+                .register(meterRegistry);
     }
 
     /**
      * Sends a verification email with a specified verification code to the provided email address.
      * The email's content is generated using a Thymeleaf template and includes the verification code
-     * and its expiration time.
+     * and its expiration time. The email is sent asynchronously on the {@code emailTaskExecutor}, so
+     * the caller does not wait for the SMTP server.
      *
      * @param email            the recipient's email address
      * @param verificationCode the verification code to be included in the email
      */
+    @Async("emailTaskExecutor")
     public void sendVerificationEmail(String email, String verificationCode) {
+        EmailSendEvent event = new EmailSendEvent();
+        event.begin();
+        boolean sent = false;
         try {
             MimeMessage message = javaMailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
@@ -61,16 +91,53 @@ public class EmailService {
             helper.setFrom(emailFrom);
             helper.setTo(email);
             helper.setSubject("OTP Auth Verification Code");
+            helper.setText(renderVerificationEmail(verificationCode), true);
 
-            Context context = new Context();
-            context.setVariable("verificationCode", verificationCode);
-            context.setVariable("expirationMinutes", VERIFICATION_CODE_EXPIRATION);
-            String html = templateEngine.process("email-verification", context);
-            helper.setText(html, true);
-
-            javaMailSender.send(message);
-        } catch (MessagingException e) {
+            resilienceService.run(SMTP, () -> sendTimer.record(() -> javaMailSender.send(message)));
+            sent = true;
+        } catch (MessagingException | MailException | DependencyUnavailableException e) {
             log.error("Failed to send verification email", e);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.emailDomain = AuthEvent.domainOf(email);
+                event.sent = sent;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Renders the HTML body of a verification email using the {@code email-verification} Thymeleaf template.
+     *
+     * @param verificationCode the verification code to be included in the email
+     * @return the rendered HTML body
+     */
+    public String renderVerificationEmail(String verificationCode) {
+        EmailRenderEvent event = new EmailRenderEvent();
+        event.begin();
+        try {
+            return renderTimer.record(() -> render(verificationCode));
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.template = "email-verification";
+                event.commit();
+            }
         }
     }
+
+    /**
+     * Renders the HTML body of a verification email without recording metrics or events.
+     * Used directly by the warm-up, so synthetic renders do not show up in the render timer.
+     *
+     * @param verificationCode the verification code to be included in the email
+     * @return the rendered HTML body
+     */
+    String render(String verificationCode) {
+        Context context = new Context();
+        context.setVariable("verificationCode", verificationCode);
+        context.setVariable("expirationMinutes", VERIFICATION_CODE_EXPIRATION);
+        return templateEngine.process("email-verification", context);
+    }
 }
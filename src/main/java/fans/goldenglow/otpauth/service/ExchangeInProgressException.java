@@ -0,0 +1,14 @@
+package fans.goldenglow.otpauth.service;
+
+/**
+ * Thrown when a token exchange is retried while the first exchange of the same email address and
+ * code is still running, and that exchange did not finish within the time the retry waits for it.
+ */
+public class ExchangeInProgressException extends RuntimeException {
+    /**
+     * Constructs an ExchangeInProgressException.
+     */
+    public ExchangeInProgressException() {
+        super("Token exchange is still in progress");
+    }
+}
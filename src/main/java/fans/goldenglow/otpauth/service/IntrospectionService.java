@@ -0,0 +1,205 @@
+package fans.goldenglow.otpauth.service;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import fans.goldenglow.otpauth.dto.ReferenceTokenClaims;
+import fans.goldenglow.otpauth.dto.TokenIntrospection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class responsible for introspecting batches of tokens issued by this service.
+ * <p>
+ * Each token is reported as active together with its subject, scopes and expiry, or as inactive if
+ * its signature, issuer or expiry is invalid. Results for active JWTs are cached until the token
+ * expires, so repeated introspection of the same token does not verify its signature again.
+ * Reference tokens are resolved through the {@link ReferenceTokenService} on every call, so that
+ * revoked tokens are reported as inactive straight away. When reference tokens are disabled, any
+ * token that is not a JWT is reported as inactive.
+ * <p>
+ * Tokens that miss the cache are verified on the caller's thread for small batches. Larger batches
+ * are split into one slice per processor, with all but one slice verified on the
+ * {@code introspectionTaskExecutor}, since signature verification is CPU bound.
+ */
+@Service
+public class IntrospectionService {
+    @Value("${config.introspection.parallel_threshold}")
+    private int PARALLEL_THRESHOLD;
+
+    private final TokenService tokenService;
+    private final ReferenceTokenService referenceTokenService;
+    private final Executor introspectionTaskExecutor;
+    private final Cache<String, TokenIntrospection> activeTokens;
+    private final Counter activeCounter;
+    private final Counter inactiveCounter;
+
+    /**
+     * Constructs an IntrospectionService instance with dependencies injected.
+     *
+     * @param tokenService the TokenService used to verify tokens
+     * @param referenceTokenService the ReferenceTokenService used to resolve reference tokens, or null if
+     *                              reference tokens are disabled
+     * @param introspectionTaskExecutor the executor used to verify slices of large batches in parallel
+     * @param cacheMaximumSize the maximum number of active tokens kept in the cache
+     * @param meterRegistry the MeterRegistry used to count results and monitor the cache
+     */
+    @Autowired
+    public IntrospectionService(TokenService tokenService, @Nullable ReferenceTokenService referenceTokenService,
+                                @Qualifier("introspectionTaskExecutor") Executor introspectionTaskExecutor,
+                                @Value("${config.introspection.cache.maximum_size}") long cacheMaximumSize,
+                                MeterRegistry meterRegistry) {
+        this.tokenService = tokenService;
+        this.referenceTokenService = referenceTokenService;
+        this.introspectionTaskExecutor = introspectionTaskExecutor;
+        this.activeTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaximumSize)
+                .expireAfter(new UntilTokenExpires())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, activeTokens, "introspection");
+        this.activeCounter = introspectionCounter("active", meterRegistry);
+        this.inactiveCounter = introspectionCounter("inactive", meterRegistry);
+    }
+
+    private static Counter introspectionCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("otpauth.introspection.tokens")
+                .description("Number of introspected tokens by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Introspects a batch of tokens.
+     * A failure in any slice, such as a {@link DependencyUnavailableException} while resolving a reference
+     * token, is rethrown as is, so it is answered in the same way as on a single-threaded call.
+     *
+     * @param tokens the tokens to introspect
+     * @return the introspection result for each token, in the same order as {@code tokens}
+     */
+    public List<TokenIntrospection> introspect(List<String> tokens) {
+        TokenIntrospection[] results = new TokenIntrospection[tokens.size()];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            String token = tokens.get(i);
+            TokenIntrospection cached = token != null ? activeTokens.getIfPresent(token) : null;
+            if (cached != null) {
+                activeCounter.increment();
+                results[i] = cached;
+            } else {
+                misses.add(i);
+            }
+        }
+
+        int slices = misses.size() < PARALLEL_THRESHOLD
+                ? 1 : Math.min(misses.size(), Runtime.getRuntime().availableProcessors());
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[slices - 1];
+        for (int slice = 1; slice < slices; slice++) {
+            int first = slice;
+            futures[slice - 1] = CompletableFuture.runAsync(
+                    () -> introspectSlice(tokens, misses, first, slices, results), introspectionTaskExecutor);
+        }
+        introspectSlice(tokens, misses, 0, slices, results);
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Verifies every {@code stride}-th token that missed the cache, starting at {@code first}.
+     *
+     * @param tokens the tokens of the batch
+     * @param misses the indices of the tokens that missed the cache
+     * @param first the position in {@code misses} to start at
+     * @param stride the number of slices
+     * @param results the array the results are written to, by token index
+     */
+    private void introspectSlice(List<String> tokens, List<Integer> misses, int first, int stride,
+                                 TokenIntrospection[] results) {
+        for (int i = first; i < misses.size(); i += stride) {
+            int index = misses.get(i);
+            results[index] = verify(tokens.get(index));
+        }
+    }
+
+    /**
+     * Verifies a single token and caches the result if the token is an active JWT.
+     * Tokens without a dot cannot be JWTs and are resolved as reference tokens.
+     *
+     * @param token the token to verify
+     * @return the introspection result for the token
+     */
+    private TokenIntrospection verify(String token) {
+        if (token == null || token.isEmpty()) {
+            inactiveCounter.increment();
+            return new TokenIntrospection(false, null, null, null);
+        }
+        if (token.indexOf('.') < 0) {
+            Optional<ReferenceTokenClaims> claims = referenceTokenService != null
+                    ? referenceTokenService.resolve(token)
+                    : Optional.empty();
+            (claims.isPresent() ? activeCounter : inactiveCounter).increment();
+            return claims
+                    .map(c -> new TokenIntrospection(true, c.getSubject(), c.getScope(), c.getExpiresAt()))
+                    .orElseGet(() -> new TokenIntrospection(false, null, null, null));
+        }
+        try {
+            DecodedJWT decodedJWT = tokenService.verifyToken(token);
+            TokenIntrospection introspection = new TokenIntrospection(true, decodedJWT.getSubject(),
+                    decodedJWT.getClaim("scope").asString(), decodedJWT.getExpiresAtAsInstant().getEpochSecond());
+            activeTokens.put(token, introspection);
+            activeCounter.increment();
+            return introspection;
+        } catch (JWTVerificationException e) {
+            inactiveCounter.increment();
+            return new TokenIntrospection(false, null, null, null);
+        }
+    }
+
+    /**
+     * Expires each cached result at the expiry of its token.
+     */
+    private static final class UntilTokenExpires implements Expiry<String, TokenIntrospection> {
+        @Override
+        public long expireAfterCreate(String token, TokenIntrospection introspection, long currentTime) {
+            long remainingMillis = introspection.getExpiresAt() * 1000 - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, TokenIntrospection introspection, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(token, introspection, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String token, TokenIntrospection introspection, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
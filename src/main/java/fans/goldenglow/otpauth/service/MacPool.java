@@ -0,0 +1,85 @@
+package fans.goldenglow.otpauth.service;
+
+import javax.crypto.Mac;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of {@link Mac} instances shared by all threads, each with its own lock and scratch buffer.
+ * <p>
+ * A thread always uses the same entry, chosen from its thread id in the same way as the entropy buffers
+ * of {@link VerificationCodeGenerator}, so with up to twice as many threads as processors most threads
+ * effectively own an entry and rarely contend. Entries are shared rather than thread-local so that
+ * short-lived virtual threads do not each create a new Mac.
+ * <p>
+ * Callers must release every acquired entry:
+ * <pre>{@code
+ * MacPool.Entry entry = macPool.acquire();
+ * try {
+ *     entry.mac().doFinal(entry.scratch(), 0);
+ * } finally {
+ *     entry.release();
+ * }
+ * }</pre>
+ */
+final class MacPool {
+    private final Entry[] entries;
+    private final int stripeMask;
+
+    /**
+     * Constructs a MacPool with one entry per stripe.
+     * The number of stripes is the smallest power of two of at least twice the available processors.
+     *
+     * @param macFactory creates the Mac of each entry, already initialised if every caller uses the same key
+     * @param scratchLength the length of the scratch buffer of each entry
+     */
+    MacPool(Supplier<Mac> macFactory, int scratchLength) {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        this.entries = new Entry[stripes];
+        for (int i = 0; i < stripes; i++) {
+            entries[i] = new Entry(macFactory.get(), new byte[scratchLength]);
+        }
+        this.stripeMask = stripes - 1;
+    }
+
+    /**
+     * Locks and returns the entry of the current thread.
+     *
+     * @return the locked entry, which must be released with {@link Entry#release()}
+     */
+    Entry acquire() {
+        long threadId = Thread.currentThread().threadId();
+        Entry entry = entries[(int) (threadId ^ (threadId >>> 16)) & stripeMask];
+        entry.lock.lock();
+        return entry;
+    }
+
+    /**
+     * A Mac and a scratch buffer that may only be used while the entry is held.
+     */
+    static final class Entry {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Mac mac;
+        private final byte[] scratch;
+
+        private Entry(Mac mac, byte[] scratch) {
+            this.mac = mac;
+            this.scratch = scratch;
+        }
+
+        Mac mac() {
+            return mac;
+        }
+
+        byte[] scratch() {
+            return scratch;
+        }
+
+        /**
+         * Unlocks the entry so other threads can use it.
+         */
+        void release() {
+            lock.unlock();
+        }
+    }
+}
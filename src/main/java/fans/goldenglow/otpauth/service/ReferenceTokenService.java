@@ -0,0 +1,239 @@
+package fans.goldenglow.otpauth.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import fans.goldenglow.otpauth.dto.ReferenceTokenClaims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionAuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.REDIS;
+
+/**
+ * Service class responsible for issuing, resolving and revoking reference access tokens.
+ * <p>
+ * A reference token is a short random string with no meaning of its own. Its subject, scopes and expiry
+ * are stored in Redis under a SHA-256 hash of the token, so the stored keys cannot be used as tokens.
+ * Resolved claims are kept in a bounded per-node near-cache until the token expires or
+ * {@code config.reference_token.near_cache.max_ttl} seconds have passed, whichever is sooner.
+ * <p>
+ * Revoking a token deletes it from Redis and publishes its hash on a Redis channel, which every node
+ * listens to in order to evict the token from its near-cache. The near-cache TTL bounds how long a node
+ * that missed the message can keep accepting the token. Calls to Redis go through the {@link ResilienceService}.
+ * <p>
+ * The service, and with it the revocation listener, only exists when {@code config.reference_token.enabled}
+ * is true.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "config.reference_token.enabled", havingValue = "true")
+public class ReferenceTokenService implements OpaqueTokenIntrospector {
+    @Value("${config.reference_token.near_cache.max_ttl}")
+    private long NEAR_CACHE_MAX_TTL;
+
+    private static final String REFERENCE_TOKEN_PREFIX = "reference:";
+    private static final String REVOCATION_CHANNEL = "reference-token-revocations";
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ResilienceService resilienceService;
+    private final Cache<String, ReferenceTokenClaims> nearCache;
+    private final Timer tokenStoreReadTimer;
+    private final Timer tokenStoreWriteTimer;
+    private final Timer tokenStoreDeleteTimer;
+
+    /**
+     * Constructs a ReferenceTokenService instance with dependencies injected.
+     *
+     * @param stringRedisTemplate the StringRedisTemplate used to store token claims and publish revocations
+     * @param listenerContainer the container used to subscribe to revocations published by other nodes
+     * @param objectMapper the ObjectMapper used to serialize token claims
+     * @param nearCacheMaximumSize the maximum number of resolved tokens kept in the near-cache
+     * @param resilienceService the ResilienceService that guards calls to Redis
+     * @param meterRegistry the MeterRegistry used to time store operations and monitor the near-cache
+     */
+    @Autowired
+    public ReferenceTokenService(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer,
+                                 ObjectMapper objectMapper,
+                                 @Value("${config.reference_token.near_cache.maximum_size}") long nearCacheMaximumSize,
+                                 ResilienceService resilienceService, MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.resilienceService = resilienceService;
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheMaximumSize)
+                .expireAfter(new UntilTokenOrNearCacheExpires())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nearCache, "reference_tokens");
+        listenerContainer.addMessageListener(
+                (message, pattern) -> nearCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(REVOCATION_CHANNEL));
+
+        this.tokenStoreReadTimer = tokenStoreTimer("read", meterRegistry);
+        this.tokenStoreWriteTimer = tokenStoreTimer("write", meterRegistry);
+        this.tokenStoreDeleteTimer = tokenStoreTimer("delete", meterRegistry);
+    }
+
+    private static Timer tokenStoreTimer(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("otpauth.reference_token.store")
+                .description("Time spent on reference token store operations")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Issues a reference token and stores its claims in Redis until it expires.
+     *
+     * @param userId the unique identifier of the user for whom the token is issued
+     * @param expirationMinutes the duration, in minutes, for which the token will remain valid
+     * @param scopes the scopes granted to the token
+     * @return the reference token
+     */
+    public String issue(String userId, long expirationMinutes, String[] scopes) {
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+
+        Instant expiresAt = Instant.now().plus(Duration.ofMinutes(expirationMinutes));
+        ReferenceTokenClaims claims = new ReferenceTokenClaims(userId, String.join(" ", scopes), expiresAt.getEpochSecond());
+        String value;
+        try {
+            value = objectMapper.writeValueAsString(claims);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        resilienceService.run(REDIS, () -> tokenStoreWriteTimer.record(() -> stringRedisTemplate.opsForValue()
+                .set(REFERENCE_TOKEN_PREFIX + hash(token), value, expirationMinutes, TimeUnit.MINUTES)));
+        return token;
+    }
+
+    /**
+     * Resolves the claims of a reference token, from the near-cache if possible and from Redis otherwise.
+     *
+     * @param token the reference token
+     * @return an {@code Optional} containing the claims if the token exists and has not expired or been revoked,
+     * or an empty {@code Optional} otherwise
+     */
+    public Optional<ReferenceTokenClaims> resolve(String token) {
+        String key = hash(token);
+        ReferenceTokenClaims claims = nearCache.getIfPresent(key);
+        if (claims == null) {
+            String value = resilienceService.call(REDIS,
+                    () -> tokenStoreReadTimer.record(() -> stringRedisTemplate.opsForValue().get(REFERENCE_TOKEN_PREFIX + key)));
+            if (value == null) {
+                return Optional.empty();
+            }
+            try {
+                claims = objectMapper.readValue(value, ReferenceTokenClaims.class);
+            } catch (JsonProcessingException e) {
+                log.error("Unreadable reference token claims", e);
+                return Optional.empty();
+            }
+            nearCache.put(key, claims);
+        }
+        return claims.getExpiresAt() > Instant.now().getEpochSecond() ? Optional.of(claims) : Optional.empty();
+    }
+
+    /**
+     * Revokes a reference token on every node.
+     *
+     * @param token the reference token to revoke
+     * @return true if the token existed, false otherwise
+     */
+    public boolean revoke(String token) {
+        String key = hash(token);
+        Boolean deleted = resilienceService.call(REDIS,
+                () -> tokenStoreDeleteTimer.record(() -> stringRedisTemplate.delete(REFERENCE_TOKEN_PREFIX + key)));
+        nearCache.invalidate(key);
+        resilienceService.call(REDIS, () -> stringRedisTemplate.convertAndSend(REVOCATION_CHANNEL, key));
+        return Boolean.TRUE.equals(deleted);
+    }
+
+    /**
+     * Resolves a reference token for Spring Security's opaque token authentication.
+     * Each scope is granted as a {@code SCOPE_} authority, like the scopes of a JWT.
+     *
+     * @param token the reference token
+     * @return the authenticated principal named after the token's subject
+     * @throws BadOpaqueTokenException if the token does not exist, has expired or has been revoked
+     */
+    @Override
+    public OAuth2AuthenticatedPrincipal introspect(String token) {
+        ReferenceTokenClaims claims = resolve(token)
+                .orElseThrow(() -> new BadOpaqueTokenException("Invalid reference token"));
+
+        List<String> scopes = Arrays.asList(claims.getScope().split(" "));
+        Collection<GrantedAuthority> authorities = new ArrayList<>(scopes.size());
+        for (String scope : scopes) {
+            authorities.add(new SimpleGrantedAuthority("SCOPE_" + scope));
+        }
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(OAuth2TokenIntrospectionClaimNames.ACTIVE, true);
+        attributes.put(OAuth2TokenIntrospectionClaimNames.SUB, claims.getSubject());
+        attributes.put(OAuth2TokenIntrospectionClaimNames.SCOPE, scopes);
+        attributes.put(OAuth2TokenIntrospectionClaimNames.EXP, Instant.ofEpochSecond(claims.getExpiresAt()));
+        return new OAuth2IntrospectionAuthenticatedPrincipal(claims.getSubject(), attributes, authorities);
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Expires each near-cache entry at the expiry of its token or after the near-cache TTL, whichever is sooner.
+     */
+    private final class UntilTokenOrNearCacheExpires implements Expiry<String, ReferenceTokenClaims> {
+        @Override
+        public long expireAfterCreate(String key, ReferenceTokenClaims claims, long currentTime) {
+            long remainingMillis = claims.getExpiresAt() * 1000 - System.currentTimeMillis();
+            long maxTtlMillis = TimeUnit.SECONDS.toMillis(NEAR_CACHE_MAX_TTL);
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(remainingMillis, maxTtlMillis)));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, ReferenceTokenClaims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, ReferenceTokenClaims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
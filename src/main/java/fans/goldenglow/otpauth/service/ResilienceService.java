@@ -0,0 +1,142 @@
+package fans.goldenglow.otpauth.service;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Service class responsible for isolating calls to Redis, PostgreSQL and the SMTP server.
+ * <p>
+ * Each dependency has its own bulkhead, which bounds the number of concurrent calls, and its own
+ * circuit breaker, which opens when too many recent calls failed or were slow. While the breaker is
+ * open, or when the bulkhead stays full for longer than its maximum wait, calls fail immediately with
+ * a {@link DependencyUnavailableException} instead of waiting on the dependency. Timeouts for the
+ * calls themselves are set on the clients (see {@code spring.data.redis.timeout}, the Hikari and
+ * PostgreSQL driver timeouts and {@code mail.smtp.timeout}), so every guarded call is bounded.
+ * <p>
+ * Every dependency is configured under {@code config.resilience.<dependency>}, where the dependency
+ * is {@code redis}, {@code postgres} or {@code smtp}:
+ * <ul>
+ *     <li>{@code max_concurrent_calls} and {@code max_wait} (milliseconds) for the bulkhead</li>
+ *     <li>{@code failure_rate_threshold} and {@code slow_call_rate_threshold} (percent),
+ *     {@code slow_call_duration} (milliseconds), {@code sliding_window_size} and
+ *     {@code minimum_number_of_calls} (calls) and {@code wait_in_open_state} (milliseconds)
+ *     for the circuit breaker</li>
+ * </ul>
+ * Bulkhead and circuit breaker states are exported through Micrometer as {@code resilience4j.*}.
+ */
+@Service
+public class ResilienceService {
+
+    /**
+     * The external dependencies guarded by this service.
+     */
+    public enum Dependency {
+        REDIS("redis"),
+        POSTGRES("postgres"),
+        SMTP("smtp");
+
+        private final String key;
+
+        Dependency(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Returns the name of the dependency, as used in configuration keys and metric tags.
+         *
+         * @return the name of the dependency
+         */
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final String CONFIG_PREFIX = "config.resilience.";
+
+    private final Map<Dependency, Bulkhead> bulkheads = new EnumMap<>(Dependency.class);
+    private final Map<Dependency, CircuitBreaker> circuitBreakers = new EnumMap<>(Dependency.class);
+
+    /**
+     * Constructs a ResilienceService instance with a bulkhead and circuit breaker per dependency.
+     *
+     * @param environment the Environment the per-dependency settings are read from
+     * @param meterRegistry the MeterRegistry the bulkhead and circuit breaker metrics are bound to
+     */
+    @Autowired
+    public ResilienceService(Environment environment, MeterRegistry meterRegistry) {
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+
+        for (Dependency dependency : Dependency.values()) {
+            String prefix = CONFIG_PREFIX + dependency.getKey() + ".";
+            BulkheadConfig bulkheadConfig = BulkheadConfig.custom()
+                    .maxConcurrentCalls(environment.getRequiredProperty(prefix + "max_concurrent_calls", Integer.class))
+                    .maxWaitDuration(Duration.ofMillis(environment.getRequiredProperty(prefix + "max_wait", Long.class)))
+                    .build();
+            CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+                    .slidingWindowSize(environment.getRequiredProperty(prefix + "sliding_window_size", Integer.class))
+                    .minimumNumberOfCalls(environment.getRequiredProperty(prefix + "minimum_number_of_calls", Integer.class))
+                    .failureRateThreshold(environment.getRequiredProperty(prefix + "failure_rate_threshold", Float.class))
+                    .slowCallRateThreshold(environment.getRequiredProperty(prefix + "slow_call_rate_threshold", Float.class))
+                    .slowCallDurationThreshold(Duration.ofMillis(environment.getRequiredProperty(prefix + "slow_call_duration", Long.class)))
+                    .waitDurationInOpenState(Duration.ofMillis(environment.getRequiredProperty(prefix + "wait_in_open_state", Long.class)))
+                    .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                    .build();
+            bulkheads.put(dependency, bulkheadRegistry.bulkhead(dependency.getKey(), bulkheadConfig));
+            circuitBreakers.put(dependency, circuitBreakerRegistry.circuitBreaker(dependency.getKey(), circuitBreakerConfig));
+        }
+
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+    }
+
+    /**
+     * Calls a dependency through its bulkhead and circuit breaker.
+     * Exceptions thrown by the call itself are counted by the circuit breaker and rethrown unchanged.
+     *
+     * @param dependency the dependency being called
+     * @param supplier the call to make
+     * @param <T> the type of the result
+     * @return the result of the call
+     * @throws DependencyUnavailableException if the circuit breaker is open or the bulkhead is full
+     */
+    public <T> T call(Dependency dependency, Supplier<T> supplier) {
+        try {
+            return Bulkhead.decorateSupplier(bulkheads.get(dependency),
+                    CircuitBreaker.decorateSupplier(circuitBreakers.get(dependency), supplier)).get();
+        } catch (CallNotPermittedException | BulkheadFullException e) {
+            throw new DependencyUnavailableException(dependency, e);
+        }
+    }
+
+    /**
+     * Calls a dependency that returns no result through its bulkhead and circuit breaker.
+     *
+     * @param dependency the dependency being called
+     * @param runnable the call to make
+     * @throws DependencyUnavailableException if the circuit breaker is open or the bulkhead is full
+     */
+    public void run(Dependency dependency, Runnable runnable) {
+        call(dependency, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+}
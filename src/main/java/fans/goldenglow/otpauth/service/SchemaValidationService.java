@@ -0,0 +1,93 @@
+package fans.goldenglow.otpauth.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service class responsible for checking the database schema after startup.
+ * <p>
+ * In fast-start mode Hibernate neither updates nor inspects the schema while the application context
+ * starts. Instead, once the context has started, this service runs Hibernate's schema validation in the
+ * background, which compares every mapped table and column, including its type, with the database.
+ * The result is reported by the {@code schema} health indicator, which is part of the readiness group,
+ * so the node only reports itself ready once the schema has been found to match.
+ */
+@Slf4j
+@Service
+public class SchemaValidationService {
+    @Value("${config.schema.validate_on_ready}")
+    private boolean VALIDATE_ON_READY;
+
+    /**
+     * The outcome of the schema check.
+     */
+    public enum Result {
+        DISABLED,
+        PENDING,
+        VALID,
+        INVALID
+    }
+
+    private final EntityManagerFactory entityManagerFactory;
+    private volatile Result result = Result.PENDING;
+    private volatile String failure;
+
+    /**
+     * Constructs a SchemaValidationService instance with dependencies injected.
+     *
+     * @param entityManagerFactory the EntityManagerFactory whose mappings are validated against the database
+     */
+    @Autowired
+    public SchemaValidationService(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * Starts the schema check on a background thread once the context has started, if enabled.
+     * The check overlaps with the JIT warm-up, and readiness waits for both.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void validateOnStart() {
+        if (VALIDATE_ON_READY) {
+            Thread.ofVirtual().name("schema-validation").start(this::validateSchema);
+        } else {
+            result = Result.DISABLED;
+        }
+    }
+
+    /**
+     * Returns the outcome of the schema check so far.
+     *
+     * @return the result of the schema check
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    /**
+     * Returns why the schema check failed.
+     *
+     * @return the failure message, or null if the check has not failed
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    private void validateSchema() {
+        try {
+            entityManagerFactory.unwrap(SessionFactory.class).getSchemaManager().validateMappedObjects();
+            log.info("Database schema matches the entity mappings");
+            result = Result.VALID;
+        } catch (RuntimeException e) {
+            log.error("Database schema does not match the entity mappings", e);
+            failure = e.getMessage();
+            result = Result.INVALID;
+        }
+    }
+}
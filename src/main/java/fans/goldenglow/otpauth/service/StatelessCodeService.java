@@ -0,0 +1,310 @@
+package fans.goldenglow.otpauth.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.REDIS;
+
+/**
+ * Service class responsible for verification codes that are derived rather than stored.
+ * <p>
+ * A code is the HMAC-SHA256 of the normalized email address, the current time window and a generation
+ * number, keyed with a server key and truncated to {@code config.verification.code.length} digits in the
+ * same way as HOTP. A code is accepted during the window it was issued in and the following one, so it
+ * stays valid for between one and two {@code config.verification.stateless.period} seconds.
+ * <p>
+ * To stop a code from being used twice, consuming a code atomically sets a small marker in Redis for the
+ * email address, window and generation, which expires together with the code. Checking a code reads the
+ * marker without setting it, so tokens can be issued before the code is consumed. Issuing a code picks the
+ * first generation of the current window whose marker is not set, so a code requested again after a login
+ * in the same window is a new one rather than the code that was just used. At most
+ * {@value #GENERATIONS_PER_WINDOW} codes can be used per window.
+ * <p>
+ * Like stored codes, a code can only be requested once per {@code config.verification.code.resend_threshold}
+ * seconds per email address, enforced with a marker set with {@code SET NX} that expires with the threshold.
+ * <p>
+ * The HMACs are computed with a {@link MacPool} keyed once with the server key. Every node must share the
+ * key, configured as Base64 in {@code config.verification.stateless.key}. The service only exists when
+ * {@code config.verification.mode} is {@code stateless}, and it fails to start if the key is missing or
+ * shorter than {@value #MINIMUM_KEY_BYTES} bytes.
+ */
+@Service
+@ConditionalOnProperty(name = "config.verification.mode", havingValue = "stateless")
+public class StatelessCodeService {
+    @Value("${config.verification.code.length}")
+    private int VERIFICATION_CODE_LENGTH;
+    @Value("${config.verification.code.resend_threshold}")
+    private long RESEND_THRESHOLD;
+    @Value("${config.verification.stateless.period}")
+    private long STATELESS_PERIOD;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int HMAC_SHA256_LENGTH = 32;
+    private static final String USED_CODE_PREFIX = "verification-used:";
+    private static final String SENT_CODE_PREFIX = "verification-sent:";
+    private static final int GENERATIONS_PER_WINDOW = 4;
+    private static final int MINIMUM_KEY_BYTES = 32;
+
+    private final SecretKeySpec key;
+    private final MacPool macPool;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ResilienceService resilienceService;
+    private final Timer codeStoreReadTimer;
+    private final Timer codeStoreWriteTimer;
+    private final Timer codeStoreDeleteTimer;
+    private final Timer codeStoreConsumeTimer;
+
+    /**
+     * Constructs a StatelessCodeService instance with dependencies injected.
+     *
+     * @param stringRedisTemplate the StringRedisTemplate used for the resend and used markers
+     * @param key the Base64 encoded key shared by all nodes
+     * @param resilienceService the ResilienceService that guards calls to Redis
+     * @param meterRegistry the MeterRegistry used to time reading and setting the markers
+     * @throws IllegalStateException if the key is missing, not valid Base64 or too short
+     */
+    @Autowired
+    public StatelessCodeService(StringRedisTemplate stringRedisTemplate,
+                                @Value("${config.verification.stateless.key}") String key,
+                                ResilienceService resilienceService, MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.resilienceService = resilienceService;
+        this.key = new SecretKeySpec(decodeKey(key), HMAC_ALGORITHM);
+        this.macPool = new MacPool(this::createMac, HMAC_SHA256_LENGTH);
+        this.codeStoreReadTimer = codeStoreTimer("read", meterRegistry);
+        this.codeStoreWriteTimer = codeStoreTimer("write", meterRegistry);
+        this.codeStoreDeleteTimer = codeStoreTimer("delete", meterRegistry);
+        this.codeStoreConsumeTimer = codeStoreTimer("consume", meterRegistry);
+    }
+
+    private static Timer codeStoreTimer(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("otpauth.code.store")
+                .description("Time spent on verification code store operations")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Computes a verification code for the given email address in the current time window.
+     * Requesting a code again within the same window yields the same code until that code has been used.
+     *
+     * @param email the email address the code is sent to
+     * @return the verification code, or null if a code was requested within the resend threshold or every
+     *         code of the current window has been used
+     */
+    public String generate(String email) {
+        return generate(email, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Checks a verification code against the current and the previous time window without marking it as used.
+     *
+     * @param email the email address associated with the verification code
+     * @param verificationCode the verification code to check
+     * @return true if the code matches and has not been used yet, false otherwise
+     */
+    public boolean matches(String email, String verificationCode) {
+        return matches(email, verificationCode, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Checks a verification code against the current and the previous time window and, if it matches,
+     * marks it as used.
+     *
+     * @param email the email address associated with the verification code
+     * @param verificationCode the verification code to consume
+     * @return true if the code matches and this call marked it as used, false otherwise
+     */
+    public boolean consume(String email, String verificationCode) {
+        return consume(email, verificationCode, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Clears the resend marker of an email address, so a code that could not be sent can be requested
+     * again right away.
+     *
+     * @param email the email address the code was issued for
+     */
+    public void withdraw(String email) {
+        String sentKey = SENT_CODE_PREFIX + normalize(email);
+        resilienceService.call(REDIS, () -> codeStoreDeleteTimer.record(() -> stringRedisTemplate.delete(sentKey)));
+    }
+
+    /**
+     * Computes a verification code for the given email address at the given time.
+     *
+     * @param email the email address the code is sent to
+     * @param epochSecond the time, in seconds since the epoch
+     * @return the verification code, or null if a code was requested within the resend threshold or every
+     *         code of the window has been used
+     */
+    String generate(String email, long epochSecond) {
+        String normalizedEmail = normalize(email);
+        Boolean claimed = resilienceService.call(REDIS, () -> codeStoreWriteTimer.record(() -> stringRedisTemplate.opsForValue()
+                .setIfAbsent(SENT_CODE_PREFIX + normalizedEmail, "1", RESEND_THRESHOLD, TimeUnit.SECONDS)));
+        if (!Boolean.TRUE.equals(claimed)) {
+            return null;
+        }
+
+        long window = epochSecond / STATELESS_PERIOD;
+        List<String> usedKeys = new ArrayList<>(GENERATIONS_PER_WINDOW);
+        for (int generation = 0; generation < GENERATIONS_PER_WINDOW; generation++) {
+            usedKeys.add(usedKey(normalizedEmail, window, generation));
+        }
+        List<String> used = resilienceService.call(REDIS,
+                () -> codeStoreReadTimer.record(() -> stringRedisTemplate.opsForValue().multiGet(usedKeys)));
+        for (int generation = 0; generation < GENERATIONS_PER_WINDOW; generation++) {
+            if (used == null || used.get(generation) == null) {
+                return computeCode(normalizedEmail, window, generation);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks a verification code at the given time without marking it as used.
+     *
+     * @param email the email address associated with the verification code
+     * @param verificationCode the verification code to check
+     * @param epochSecond the time, in seconds since the epoch
+     * @return true if the code matches and has not been used yet, false otherwise
+     */
+    boolean matches(String email, String verificationCode, long epochSecond) {
+        String normalizedEmail = normalize(email);
+        String usedKey = findUsedKey(normalizedEmail, verificationCode, epochSecond);
+        return usedKey != null && !Boolean.TRUE.equals(resilienceService.call(REDIS,
+                () -> codeStoreReadTimer.record(() -> stringRedisTemplate.hasKey(usedKey))));
+    }
+
+    /**
+     * Checks a verification code at the given time and, if it matches, atomically marks it as used until
+     * it would have expired anyway.
+     *
+     * @param email the email address associated with the verification code
+     * @param verificationCode the verification code to consume
+     * @param epochSecond the time, in seconds since the epoch
+     * @return true if the code matches and this call marked it as used, false otherwise
+     */
+    boolean consume(String email, String verificationCode, long epochSecond) {
+        String normalizedEmail = normalize(email);
+        String usedKey = findUsedKey(normalizedEmail, verificationCode, epochSecond);
+        if (usedKey == null) {
+            return false;
+        }
+        long window = epochSecond / STATELESS_PERIOD;
+        long ttl = Math.max(1, (window + 2) * STATELESS_PERIOD - epochSecond);
+        Boolean set = resilienceService.call(REDIS, () -> codeStoreConsumeTimer.record(() -> stringRedisTemplate.opsForValue()
+                .setIfAbsent(usedKey, "1", ttl, TimeUnit.SECONDS)));
+        return Boolean.TRUE.equals(set);
+    }
+
+    /**
+     * Finds the code, of any generation in the current or the previous window, that matches.
+     *
+     * @return the key of the used marker of the matching code, or null if no code matches
+     */
+    private String findUsedKey(String normalizedEmail, String verificationCode, long epochSecond) {
+        if (verificationCode == null || verificationCode.length() != VERIFICATION_CODE_LENGTH) {
+            return null;
+        }
+        byte[] provided = verificationCode.getBytes(StandardCharsets.US_ASCII);
+        long currentWindow = epochSecond / STATELESS_PERIOD;
+        for (long window = currentWindow; window >= currentWindow - 1; window--) {
+            for (int generation = 0; generation < GENERATIONS_PER_WINDOW; generation++) {
+                byte[] expected = computeCode(normalizedEmail, window, generation).getBytes(StandardCharsets.US_ASCII);
+                if (MessageDigest.isEqual(expected, provided)) {
+                    return usedKey(normalizedEmail, window, generation);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String usedKey(String normalizedEmail, long window, int generation) {
+        return USED_CODE_PREFIX + normalizedEmail + ":" + window + ":" + generation;
+    }
+
+    private String computeCode(String normalizedEmail, long window, int generation) {
+        byte[] email = normalizedEmail.getBytes(StandardCharsets.UTF_8);
+        long binary;
+        MacPool.Entry entry = macPool.acquire();
+        try {
+            Mac hmac = entry.mac();
+            byte[] digest = entry.scratch();
+            hmac.update(email);
+            hmac.update((byte) 0);
+            for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                hmac.update((byte) (window >>> shift));
+            }
+            hmac.update((byte) generation);
+            hmac.doFinal(digest, 0);
+
+            int offset = digest[HMAC_SHA256_LENGTH - 1] & 0x0f;
+            binary = ((digest[offset] & 0x7fL) << 24)
+                    | ((digest[offset + 1] & 0xffL) << 16)
+                    | ((digest[offset + 2] & 0xffL) << 8)
+                    | (digest[offset + 3] & 0xffL);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            entry.release();
+        }
+
+        long modulus = 1;
+        for (int i = 0; i < VERIFICATION_CODE_LENGTH; i++) {
+            modulus *= 10;
+        }
+
+        String digits = Long.toString(binary % modulus);
+        return "0".repeat(VERIFICATION_CODE_LENGTH - digits.length()) + digits;
+    }
+
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private Mac createMac() {
+        try {
+            Mac instance = Mac.getInstance(HMAC_ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] decodeKey(String key) {
+        if (key == null || key.isBlank()) {
+            throw new IllegalStateException("config.verification.stateless.key must be set in stateless mode");
+        }
+        byte[] decoded;
+        try {
+            decoded = Base64.getDecoder().decode(key.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("config.verification.stateless.key is not valid Base64", e);
+        }
+        if (decoded.length < MINIMUM_KEY_BYTES) {
+            throw new IllegalStateException("config.verification.stateless.key must decode to at least "
+                    + MINIMUM_KEY_BYTES + " bytes");
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,208 @@
+package fans.goldenglow.otpauth.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fans.goldenglow.otpauth.dto.TokenResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.REDIS;
+
+/**
+ * Service class responsible for exchanging verification codes for tokens idempotently.
+ * <p>
+ * A verification code is deleted as soon as it is used, so a client that times out and retries the
+ * exchange would otherwise be rejected and have to request a new code. After a successful exchange the
+ * issued {@link TokenResponse} is kept in Redis for {@code config.verification.idempotency_window}
+ * seconds, keyed by a SHA-256 hash of the email address and code. A retry with the same email address
+ * and code within that window gets the same tokens back, without minting new ones or touching the
+ * database, and on any node.
+ * <p>
+ * Before the code is validated, the exchange claims the key with an in-flight marker using
+ * {@code SET NX}. A retry that arrives while the first exchange is still running finds the marker and
+ * polls for the stored response for up to {@value #IN_FLIGHT_WAIT_MILLIS} ms instead of failing because
+ * the code has already been consumed. If the first exchange fails, it removes the marker again.
+ * <p>
+ * The stored response contains the issued tokens in plaintext, so anyone who can read Redis can use
+ * them until they expire. They are only kept for the idempotency window, which should stay short, and
+ * Redis must be protected in the same way as for the verification codes stored in it.
+ * <p>
+ * The cache is best effort: if a call to Redis fails, the exchange behaves as it did without it. Calls
+ * to Redis go through the {@link ResilienceService}. While its circuit breaker is open, the exchange is
+ * rejected with a {@link DependencyUnavailableException} before the code is validated, as the code store
+ * is unavailable too. Tokens that have already been issued are still returned if they cannot be stored.
+ */
+@Slf4j
+@Service
+public class TokenExchangeService {
+    @Value("${config.verification.idempotency_window}")
+    private long IDEMPOTENCY_WINDOW;
+
+    private static final String EXCHANGE_PREFIX = "exchange:";
+    private static final String IN_FLIGHT = "in-flight";
+    private static final long IN_FLIGHT_WAIT_MILLIS = 2000;
+    private static final long IN_FLIGHT_POLL_MILLIS = 50;
+
+    private final TokenService tokenService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ResilienceService resilienceService;
+    private final Counter replayCounter;
+
+    /**
+     * Constructs a TokenExchangeService instance with dependencies injected.
+     *
+     * @param tokenService the TokenService used to validate codes and generate tokens
+     * @param stringRedisTemplate the StringRedisTemplate used to store recent exchanges
+     * @param objectMapper the ObjectMapper used to serialize the stored token responses
+     * @param resilienceService the ResilienceService that guards calls to Redis
+     * @param meterRegistry the MeterRegistry used to count exchanges answered from the cache
+     */
+    @Autowired
+    public TokenExchangeService(TokenService tokenService, StringRedisTemplate stringRedisTemplate,
+                                ObjectMapper objectMapper, ResilienceService resilienceService,
+                                MeterRegistry meterRegistry) {
+        this.tokenService = tokenService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.resilienceService = resilienceService;
+        this.replayCounter = Counter.builder("otpauth.token.exchange.replays")
+                .description("Number of repeated token exchanges answered from the idempotency cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Exchanges a verification code for tokens.
+     * If another exchange of the same email address and code has succeeded within the idempotency
+     * window, its tokens are returned. If one is still in flight, the call waits for its tokens.
+     * Otherwise, the code is validated and, if it is valid, new tokens are generated and remembered
+     * for the idempotency window.
+     *
+     * @param email the email address associated with the verification code
+     * @param verificationCode the verification code to exchange
+     * @return a {@link TokenResponse} with the access and refresh tokens, or null if the code is invalid
+     * @throws ExchangeInProgressException if an exchange of the same code is still in flight after waiting
+     * @throws DependencyUnavailableException if the Redis circuit breaker is open or its bulkhead is full
+     */
+    public TokenResponse exchange(String email, String verificationCode) {
+        String key = EXCHANGE_PREFIX + hash(email, verificationCode);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IN_FLIGHT_WAIT_MILLIS);
+
+        while (!claim(key)) {
+            String value = lookUp(key);
+            if (value != null && !IN_FLIGHT.equals(value)) {
+                TokenResponse tokenResponse = parse(value);
+                if (tokenResponse != null) {
+                    replayCounter.increment();
+                }
+                return tokenResponse;
+            }
+            if (System.nanoTime() - deadline >= 0 || !pause()) {
+                throw new ExchangeInProgressException();
+            }
+        }
+
+        boolean exchanged = false;
+        try {
+            if (!tokenService.validateVerificationCode(email, verificationCode)) {
+                return null;
+            }
+            TokenResponse tokenResponse = tokenService.generateTokens(email);
+            if (!tokenService.consumeVerificationCode(email, verificationCode)) {
+                return null;
+            }
+            remember(key, tokenResponse);
+            exchanged = true;
+            return tokenResponse;
+        } finally {
+            if (!exchanged) {
+                release(key);
+            }
+        }
+    }
+
+    /**
+     * Claims the key for an exchange by setting the in-flight marker if the key is not set.
+     *
+     * @return true if the marker was set or Redis could not be reached, false if the key was already set
+     */
+    private boolean claim(String key) {
+        try {
+            return !Boolean.FALSE.equals(resilienceService.call(REDIS, () -> stringRedisTemplate.opsForValue()
+                    .setIfAbsent(key, IN_FLIGHT, IDEMPOTENCY_WINDOW, TimeUnit.SECONDS)));
+        } catch (DataAccessException e) {
+            log.warn("Failed to claim token exchange", e);
+            return true;
+        }
+    }
+
+    private void release(String key) {
+        try {
+            resilienceService.call(REDIS, () -> stringRedisTemplate.delete(key));
+        } catch (DataAccessException | DependencyUnavailableException e) {
+            log.warn("Failed to release token exchange", e);
+        }
+    }
+
+    private static boolean pause() {
+        try {
+            Thread.sleep(IN_FLIGHT_POLL_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void remember(String key, TokenResponse tokenResponse) {
+        try {
+            String value = objectMapper.writeValueAsString(tokenResponse);
+            resilienceService.run(REDIS, () -> stringRedisTemplate.opsForValue().set(key, value,
+                    IDEMPOTENCY_WINDOW, TimeUnit.SECONDS));
+        } catch (JsonProcessingException | DataAccessException | DependencyUnavailableException e) {
+            log.warn("Failed to remember token exchange", e);
+        }
+    }
+
+    private String lookUp(String key) {
+        try {
+            return resilienceService.call(REDIS, () -> stringRedisTemplate.opsForValue().get(key));
+        } catch (DataAccessException e) {
+            log.warn("Failed to look up token exchange", e);
+            return null;
+        }
+    }
+
+    private TokenResponse parse(String value) {
+        try {
+            return objectMapper.readValue(value, TokenResponse.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to read token exchange", e);
+            return null;
+        }
+    }
+
+    private static String hash(String email, String verificationCode) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(email).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(verificationCode.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
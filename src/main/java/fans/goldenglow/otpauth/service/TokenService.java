@@ -6,30 +6,43 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import fans.goldenglow.otpauth.dto.TokenResponse;
 import fans.goldenglow.otpauth.dto.VerificationCode;
+import fans.goldenglow.otpauth.jfr.*;
 import fans.goldenglow.otpauth.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Optional;
-import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.REDIS;
+
 /**
  * Service class responsible for handling token management and verification code generation.
  * This class provides functionality for the creation and validation of verification codes,
  * along with generating access and refresh tokens for user authentication.
+ * <p>
+ * Verification code store operations, token signing and token verification are timed, and issued,
+ * validated and failed codes as well as refreshes are counted through Micrometer. Each pipeline step
+ * also emits a Java Flight Recorder event from {@link fans.goldenglow.otpauth.jfr}. Calls to Redis go
+ * through the {@link ResilienceService}, so a slow or failing Redis is rejected quickly.
+ * <p>
+ * With {@code config.verification.mode} set to {@code stateless}, verification codes are derived by the
+ * {@link StatelessCodeService} instead of being stored, so issuing a code writes nothing to Redis and
+ * validating one only sets a consume-once marker. The resend threshold is not enforced in this mode.
  */
 @Slf4j
 @Service
 public class TokenService {
-    @Value("${config.verification.code.length}")
-    private int VERIFICATION_CODE_LENGTH;
     @Value("${config.verification.code.expiration}")
     private long VERIFICATION_CODE_EXPIRATION;
     @Value("${config.verification.code.resend_threshold}")
@@ -44,20 +57,87 @@ public class TokenService {
     private static final String VERIFICATION_CODE_PREFIX = "verification:";
     private final RedisTemplate<String, VerificationCode> redisTemplate;
     private final UserService userService;
+    private final VerificationCodeGenerator verificationCodeGenerator;
+    private final StatelessCodeService statelessCodeService;
+    private final ReferenceTokenService referenceTokenService;
+    private final ResilienceService resilienceService;
     private final Algorithm algorithm;
 
+    private final Timer codeStoreReadTimer;
+    private final Timer codeStoreWriteTimer;
+    private final Timer codeStoreDeleteTimer;
+    private final Timer tokenSignTimer;
+    private final Timer tokenVerifyTimer;
+    private final Counter codesIssuedCounter;
+    private final Counter codesValidatedCounter;
+    private final Counter codesFailedCounter;
+    private final Counter refreshSuccessCounter;
+    private final Counter refreshFailureCounter;
+
     /**
      * Constructs a TokenService instance with dependencies injected.
      *
      * @param redisTemplate the RedisTemplate used for handling verification code storage and retrieval
      * @param userService the UserService responsible for user management operations
+     * @param verificationCodeGenerator the VerificationCodeGenerator used to create new verification codes
+     * @param statelessCodeService the StatelessCodeService used to derive and check codes, or null if the
+     *                             verification mode is not stateless
+     * @param referenceTokenService the ReferenceTokenService used to issue reference access tokens, or null if
+     *                              reference tokens are disabled
      * @param securityService the SecurityService used to provide cryptographic utilities for token signing
+     * @param resilienceService the ResilienceService that guards calls to Redis
+     * @param meterRegistry the MeterRegistry used to record verification code and token metrics
      */
     @Autowired
-    public TokenService(RedisTemplate<String, VerificationCode> redisTemplate, UserService userService, SecurityService securityService) {
+    public TokenService(RedisTemplate<String, VerificationCode> redisTemplate, UserService userService,
+                        VerificationCodeGenerator verificationCodeGenerator,
+                        @Nullable StatelessCodeService statelessCodeService,
+                        @Nullable ReferenceTokenService referenceTokenService,
+                        SecurityService securityService, ResilienceService resilienceService,
+                        MeterRegistry meterRegistry) {
         this.redisTemplate = redisTemplate;
         this.userService = userService;
+        this.verificationCodeGenerator = verificationCodeGenerator;
+        this.statelessCodeService = statelessCodeService;
+        this.referenceTokenService = referenceTokenService;
+        this.resilienceService = resilienceService;
         this.algorithm = Algorithm.HMAC256(securityService.getSecret().getEncoded());
+
+        this.codeStoreReadTimer = codeStoreTimer("read", meterRegistry);
+        this.codeStoreWriteTimer = codeStoreTimer("write", meterRegistry);
+        this.codeStoreDeleteTimer = codeStoreTimer("delete", meterRegistry);
+        this.tokenSignTimer = Timer.builder("otpauth.token.sign")
+                .description("Time spent signing a JWT")
+                .register(meterRegistry);
+        this.tokenVerifyTimer = Timer.builder("otpauth.token.verify")
+                .description("Time spent verifying a JWT")
+                .register(meterRegistry);
+        this.codesIssuedCounter = verificationCodeCounter("issued", meterRegistry);
+        this.codesValidatedCounter = verificationCodeCounter("validated", meterRegistry);
+        this.codesFailedCounter = verificationCodeCounter("failed", meterRegistry);
+        this.refreshSuccessCounter = refreshCounter("success", meterRegistry);
+        this.refreshFailureCounter = refreshCounter("failure", meterRegistry);
+    }
+
+    private static Timer codeStoreTimer(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("otpauth.code.store")
+                .description("Time spent on verification code store operations")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    private static Counter verificationCodeCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("otpauth.verification.codes")
+                .description("Number of verification codes by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter refreshCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("otpauth.token.refreshes")
+                .description("Number of token refreshes by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
     }
 
     /**
@@ -68,40 +148,47 @@ public class TokenService {
      * @param verificationCode the verification code object containing the code and its creation timestamp
      */
     private void saveVerificationCode(String email, VerificationCode verificationCode) {
-        redisTemplate.opsForValue().set(
+        resilienceService.run(REDIS, () -> codeStoreWriteTimer.record(() -> redisTemplate.opsForValue().set(
                 VERIFICATION_CODE_PREFIX + email,
                 verificationCode,
                 VERIFICATION_CODE_EXPIRATION,
                 TimeUnit.MINUTES
-        );
+        )));
     }
 
     /**
-     * Generates a random numeric verification code of a predefined length.
-     * The length of the code is determined by the VERIFICATION_CODE_LENGTH field.
+     * Generates a signed JWT (JSON Web Token) for the given user with specified expiration time and scopes.
      *
-     * @return a string representing the generated verification code
+     * @param userId the unique identifier of the user for whom the token is generated
+     * @param expirationMinutes the duration, in minutes, for which the token will remain valid
+     * @param scopes an array of strings representing the scopes or permissions associated with the token
+     * @return a string representing the generated JWT
      */
-    private String generateVerificationCode() {
-        Random random = new Random();
-        StringBuilder code = new StringBuilder();
-
-        for (int i = 0; i < VERIFICATION_CODE_LENGTH; i++) {
-            code.append(random.nextInt(10));
+    String generateToken(String userId, long expirationMinutes, String[] scopes) {
+        String scope = String.join(" ", scopes);
+        TokenMintEvent event = new TokenMintEvent();
+        event.begin();
+        try {
+            return tokenSignTimer.record(() -> signToken(userId, expirationMinutes, scope));
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.scope = scope;
+                event.commit();
+            }
         }
-
-        return code.toString();
     }
 
     /**
-     * Generates a signed JWT (JSON Web Token) for the given user with specified expiration time and scopes.
+     * Signs a JWT without recording metrics or events.
+     * Used directly by the warm-up, so synthetic tokens do not show up in the sign timer.
      *
      * @param userId the unique identifier of the user for whom the token is generated
      * @param expirationMinutes the duration, in minutes, for which the token will remain valid
-     * @param scopes an array of strings representing the scopes or permissions associated with the token
+     * @param scope the space-separated scopes associated with the token
      * @return a string representing the generated JWT
      */
-    private String generateToken(String userId, long expirationMinutes, String[] scopes) {
+    String signToken(String userId, long expirationMinutes, String scope) {
         Instant now = Instant.now();
         return JWT
                 .create()
@@ -109,75 +196,187 @@ public class TokenService {
                 .withIssuedAt(now)
                 .withExpiresAt(now.plus(expirationMinutes, ChronoUnit.MINUTES))
                 .withSubject(userId)
-                .withClaim("scope", String.join(" ", scopes))
+                .withClaim("scope", scope)
                 .sign(algorithm);
     }
 
+    /**
+     * Verifies the signature, issuer and expiry of a JWT issued by this service.
+     *
+     * @param token the token to verify
+     * @return the decoded token
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException if the token is invalid
+     */
+    DecodedJWT verifyToken(String token) {
+        return tokenVerifyTimer.record(() -> decodeToken(token));
+    }
+
+    /**
+     * Verifies a JWT like {@link #verifyToken(String)}, without recording metrics.
+     * Used directly by the warm-up, so synthetic tokens do not show up in the verify timer.
+     *
+     * @param token the token to verify
+     * @return the decoded token
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException if the token is invalid
+     */
+    DecodedJWT decodeToken(String token) {
+        JWTVerifier jwtVerifier = JWT.require(algorithm).withIssuer(JWT_ISSUER).build();
+        return jwtVerifier.verify(token);
+    }
+
     /**
      * Creates a verification code for a given email address. If a code already exists and is within
      * the resend threshold, no new code will be generated. Otherwise, an existing code is deleted,
-     * and a new one is generated and stored.
+     * and a new one is generated and stored. In stateless mode the code is derived and nothing is stored.
      *
      * @param email the email address for which the verification code is generated
      * @return the generated verification code as a string, or null if a code already exists and is
      * within the resend threshold
      */
     public String createVerificationCode(String email) {
+        CodeIssueEvent event = new CodeIssueEvent();
+        event.begin();
+        String verificationCode = null;
+        try {
+            verificationCode = issueVerificationCode(email);
+            return verificationCode;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.emailDomain = AuthEvent.domainOf(email);
+                event.issued = verificationCode != null;
+                event.commit();
+            }
+        }
+    }
+
+    private String issueVerificationCode(String email) {
         Optional<User> user = userService.findByEmail(email);
 
         if (user.isPresent() && !user.get().isActive()) {
             return null;
         }
 
-        VerificationCode verificationCodeObj = redisTemplate.opsForValue().get(VERIFICATION_CODE_PREFIX + email);
+        if (statelessCodeService != null) {
+            String verificationCode = statelessCodeService.generate(email);
+            if (verificationCode != null) {
+                codesIssuedCounter.increment();
+            }
+            return verificationCode;
+        }
+
+        VerificationCode verificationCodeObj = resilienceService.call(REDIS,
+                () -> codeStoreReadTimer.record(() -> redisTemplate.opsForValue().get(VERIFICATION_CODE_PREFIX + email)));
         if (verificationCodeObj != null) {
             LocalDateTime creationTime = verificationCodeObj.getCreatedAt();
             LocalDateTime expirationTime = creationTime.plusSeconds(RESEND_THRESHOLD);
             if (creationTime.isBefore(expirationTime)) {
                 return null;
             } else {
-                redisTemplate.delete(VERIFICATION_CODE_PREFIX + email);
+                resilienceService.call(REDIS, () -> codeStoreDeleteTimer.record(() -> redisTemplate.delete(VERIFICATION_CODE_PREFIX + email)));
             }
         }
 
-        String verificationCode = generateVerificationCode();
+        String verificationCode = verificationCodeGenerator.generate();
 
         LocalDateTime now = LocalDateTime.now();
 
         saveVerificationCode(email, new VerificationCode(verificationCode, now));
+        codesIssuedCounter.increment();
 
         return verificationCode;
     }
 
+    /**
+     * Withdraws a verification code that could not be sent, so the user can request a new one right away
+     * instead of waiting for the resend threshold. In stateless mode only the resend marker is cleared.
+     *
+     * @param email the email address the code was issued for
+     */
+    public void withdrawVerificationCode(String email) {
+        if (statelessCodeService != null) {
+            statelessCodeService.withdraw(email);
+            return;
+        }
+        resilienceService.call(REDIS, () -> codeStoreDeleteTimer.record(() -> redisTemplate.delete(VERIFICATION_CODE_PREFIX + email)));
+    }
+
     /**
      * Validates the provided verification code against the stored code associated with the given email.
-     * If the code is valid, it is removed from the storage to prevent reuse.
+     * The code is not consumed, so a failure while issuing tokens leaves it usable for a retry; call
+     * {@link #consumeVerificationCode(String, String)} once the tokens have been issued. In stateless mode the
+     * code is recomputed instead and checked against the used markers.
      *
      * @param email the email address associated with the verification code
      * @param verificationCode the verification code to be validated
      * @return true if the provided verification code matches the stored code, false otherwise
      */
     public boolean validateVerificationCode(String email, String verificationCode) {
-        String key = VERIFICATION_CODE_PREFIX + email;
-        VerificationCode verificationCodeObj = redisTemplate.opsForValue().get(key);
+        CodeValidateEvent event = new CodeValidateEvent();
+        event.begin();
+        boolean valid = false;
+        try {
+            valid = checkVerificationCode(email, verificationCode);
+            return valid;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.emailDomain = AuthEvent.domainOf(email);
+                event.method = "email";
+                event.valid = valid;
+                event.commit();
+            }
+        }
+    }
 
-        String storedCode = null;
-        if (verificationCodeObj != null) {
-            storedCode = verificationCodeObj.getVerificationCode();
+    private boolean checkVerificationCode(String email, String verificationCode) {
+        boolean valid;
+        if (statelessCodeService != null) {
+            valid = statelessCodeService.matches(email, verificationCode);
+        } else {
+            VerificationCode verificationCodeObj = resilienceService.call(REDIS,
+                    () -> codeStoreReadTimer.record(() -> redisTemplate.opsForValue().get(VERIFICATION_CODE_PREFIX + email)));
+
+            String storedCode = null;
+            if (verificationCodeObj != null) {
+                storedCode = verificationCodeObj.getVerificationCode();
+            }
+            valid = storedCode != null && storedCode.equals(verificationCode);
+        }
+
+        if (!valid) {
+            codesFailedCounter.increment();
         }
+        return valid;
+    }
 
-        if (storedCode != null && storedCode.equals(verificationCode)) {
-            redisTemplate.delete(key);
-            return true;
+    /**
+     * Consumes a verification code that has been validated, so it cannot be used again. The stored code is
+     * deleted, or in stateless mode the code is marked as used; either is atomic, so of two requests with
+     * the same code only one consumes it.
+     *
+     * @param email the email address associated with the verification code
+     * @param verificationCode the verification code to be consumed
+     * @return true if this call consumed the code, false if it had already been consumed
+     */
+    public boolean consumeVerificationCode(String email, String verificationCode) {
+        boolean consumed;
+        if (statelessCodeService != null) {
+            consumed = statelessCodeService.consume(email, verificationCode);
+        } else {
+            consumed = Boolean.TRUE.equals(resilienceService.call(REDIS,
+                    () -> codeStoreDeleteTimer.record(() -> redisTemplate.delete(VERIFICATION_CODE_PREFIX + email))));
         }
-        return false;
+        (consumed ? codesValidatedCounter : codesFailedCounter).increment();
+        return consumed;
     }
 
     /**
      * Generates access and refresh tokens for the specified user ID.
      * The access token is created with profile-related scopes, and the refresh token
      * is generated with a scope specific to refresh token functionality.
-     * Both tokens have predefined expiration times.
+     * Both tokens have predefined expiration times. When reference tokens are enabled, the access
+     * token is a reference token whose claims are kept in Redis; the refresh token is always a JWT.
      *
      * @param userId the unique identifier of the user for whom the tokens are generated
      * @return a {@link TokenResponse} object containing the access token and refresh token
@@ -185,7 +384,9 @@ public class TokenService {
     private TokenResponse generateTokens(Long userId) {
         String userIdStr = userId.toString();
 
-        String accessToken = generateToken(userIdStr, ACCESS_TOKEN_EXPIRATION, new String[]{"profile"});
+        String accessToken = referenceTokenService != null
+                ? referenceTokenService.issue(userIdStr, ACCESS_TOKEN_EXPIRATION, new String[]{"profile"})
+                : generateToken(userIdStr, ACCESS_TOKEN_EXPIRATION, new String[]{"profile"});
         String refreshToken = generateToken(userIdStr, REFRESH_TOKEN_EXPIRATION, new String[]{"refresh_token"});
 
         return new TokenResponse(accessToken, refreshToken);
@@ -201,7 +402,18 @@ public class TokenService {
      * @return a {@link TokenResponse} object containing the generated access token and refresh token
      */
     public TokenResponse generateTokens(String email) {
-        User user = userService.createOrUpdateUser(email);
+        UserUpsertEvent event = new UserUpsertEvent();
+        event.begin();
+        User user;
+        try {
+            user = userService.createOrUpdateUser(email);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.emailDomain = AuthEvent.domainOf(email);
+                event.commit();
+            }
+        }
 
         Long userId = user.getId();
 
@@ -217,8 +429,28 @@ public class TokenService {
      * @throws Exception if the refresh token has an invalid scope or if the associated user does not exist
      */
     public TokenResponse refreshToken(String refreshTokenValue) throws Exception {
-        JWTVerifier jwtVerifier = JWT.require(algorithm).withIssuer(JWT_ISSUER).build();
-        DecodedJWT decodedJWT = jwtVerifier.verify(refreshTokenValue);
+        TokenRefreshEvent event = new TokenRefreshEvent();
+        event.begin();
+        boolean success = false;
+        try {
+            TokenResponse tokenResponse = refresh(refreshTokenValue);
+            success = true;
+            refreshSuccessCounter.increment();
+            return tokenResponse;
+        } catch (Exception e) {
+            refreshFailureCounter.increment();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    private TokenResponse refresh(String refreshTokenValue) throws Exception {
+        DecodedJWT decodedJWT = verifyToken(refreshTokenValue);
 
         if (!decodedJWT.getClaim("scope").asString().contains("refresh_token")) {
             throw new Exception("Invalid scope");
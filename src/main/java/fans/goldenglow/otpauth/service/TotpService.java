@@ -0,0 +1,373 @@
+package fans.goldenglow.otpauth.service;
+
+import fans.goldenglow.otpauth.dto.TotpEnrollmentResponse;
+import fans.goldenglow.otpauth.jfr.AuthEvent;
+import fans.goldenglow.otpauth.jfr.CodeValidateEvent;
+import fans.goldenglow.otpauth.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Service class responsible for RFC 6238 TOTP (authenticator app) enrolment and validation.
+ * <p>
+ * Users who enrol an authenticator app can exchange a TOTP code for tokens without a verification
+ * code being stored in Redis or sent by email. Codes are validated by recomputing the HMAC for the
+ * current time step and the configured number of adjacent steps. The per-step HMAC computation
+ * reuses a {@link Mac} and scratch buffer from a {@link MacPool} shared by all threads, so checking the
+ * candidate steps does not allocate.
+ * <p>
+ * The last accepted time step is stored with the user and only moves forward through a conditional
+ * update in PostgreSQL, so a code cannot be used twice on any node, and neither can an older code
+ * once a newer one has been accepted. A TOTP login therefore needs PostgreSQL only, not Redis or SMTP.
+ */
+@Slf4j
+@Service
+public class TotpService {
+    @Value("${config.totp.issuer}")
+    private String TOTP_ISSUER;
+    @Value("${config.totp.digits}")
+    private int TOTP_DIGITS;
+    @Value("${config.totp.period}")
+    private long TOTP_PERIOD;
+    @Value("${config.totp.window}")
+    private int TOTP_WINDOW;
+    @Value("${config.totp.max_attempts}")
+    private int TOTP_MAX_ATTEMPTS;
+    @Value("${config.totp.lockout_duration}")
+    private long TOTP_LOCKOUT_DURATION;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA1";
+    private static final int SECRET_BYTES = 20;
+    private static final int HMAC_SHA1_LENGTH = 20;
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+    private static final char[] BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final MacPool macPool = new MacPool(TotpService::createMac, Long.BYTES + HMAC_SHA1_LENGTH);
+    private final UserService userService;
+    private final Counter codesValidatedCounter;
+    private final Counter codesFailedCounter;
+
+    /**
+     * Constructs a TotpService instance with dependencies injected.
+     *
+     * @param userService the UserService used to load and persist enrolment data and accepted time steps
+     * @param meterRegistry the MeterRegistry used to count validated and failed codes
+     */
+    @Autowired
+    public TotpService(UserService userService, MeterRegistry meterRegistry) {
+        this.userService = userService;
+        this.codesValidatedCounter = Counter.builder("otpauth.totp.codes")
+                .description("Number of TOTP codes by outcome")
+                .tag("result", "validated")
+                .register(meterRegistry);
+        this.codesFailedCounter = Counter.builder("otpauth.totp.codes")
+                .description("Number of TOTP codes by outcome")
+                .tag("result", "failed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts an authenticator app enrolment for the given user.
+     * A new secret is generated and stored unconfirmed; a pending, unconfirmed enrolment is replaced and stays
+     * disabled until {@link #confirmEnrollment(User, String)} succeeds. A confirmed enrolment is never replaced,
+     * so a stolen access token cannot be used to move the user's TOTP login to another device.
+     *
+     * @param user the user enrolling an authenticator app
+     * @return a {@link TotpEnrollmentResponse} containing the Base32 secret and the provisioning URI to render as a QR code,
+     *         or null if the user already has a confirmed enrolment
+     */
+    public TotpEnrollmentResponse enroll(User user) {
+        if (user.isTotpEnabled()) {
+            return null;
+        }
+
+        byte[] key = new byte[SECRET_BYTES];
+        secureRandom.nextBytes(key);
+        String secret = encodeBase32(key);
+
+        user.setTotpSecret(secret);
+        user.setTotpConfirmedAt(null);
+        userService.save(user);
+
+        return new TotpEnrollmentResponse(secret, buildProvisioningUri(user.getEmail(), secret));
+    }
+
+    /**
+     * Confirms a pending enrolment by checking a code produced by the user's authenticator app.
+     *
+     * @param user the user confirming the enrolment
+     * @param totpCode the code shown by the authenticator app
+     * @return true if the code is valid and the enrolment was confirmed, false otherwise
+     */
+    public boolean confirmEnrollment(User user, String totpCode) {
+        if (user.getTotpSecret() == null) {
+            return false;
+        }
+        long step = findStep(user.getId(), user.getTotpSecret(), totpCode, System.currentTimeMillis() / 1000);
+        if (step < 0 || (user.getTotpLastStep() != null && user.getTotpLastStep() >= step)) {
+            return false;
+        }
+        user.setTotpConfirmedAt(LocalDateTime.now());
+        user.setTotpLastStep(step);
+        userService.save(user);
+        return true;
+    }
+
+    /**
+     * Validates a TOTP code for the active, enrolled user with the given email address.
+     * Every rejected code counts as a failed attempt; after {@code TOTP_MAX_ATTEMPTS} failures in a row,
+     * TOTP logins for the user are locked for {@code TOTP_LOCKOUT_DURATION} seconds and every code is rejected.
+     *
+     * @param email the email address of the user
+     * @param totpCode the code shown by the authenticator app
+     * @return true if the user has a confirmed enrolment, is not locked out, and the code is valid and unused, false otherwise
+     */
+    public boolean validateTotpCode(String email, String totpCode) {
+        return validateTotpCode(email, totpCode, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Validates a TOTP code at the given time.
+     *
+     * @param email the email address of the user
+     * @param totpCode the code shown by the authenticator app
+     * @param epochSecond the time, in seconds since the epoch
+     * @return true if the user has a confirmed enrolment, is not locked out, and the code is valid and unused, false otherwise
+     */
+    boolean validateTotpCode(String email, String totpCode, long epochSecond) {
+        CodeValidateEvent event = new CodeValidateEvent();
+        event.begin();
+        boolean valid = false;
+        try {
+            Optional<User> user = userService.findByEmail(email);
+            if (user.isPresent() && user.get().isActive() && user.get().isTotpEnabled()) {
+                valid = !isLockedOut(user.get()) && verify(user.get(), totpCode, epochSecond);
+                if (!valid) {
+                    userService.recordTotpFailure(user.get().getId(), TOTP_MAX_ATTEMPTS,
+                            LocalDateTime.now().plusSeconds(TOTP_LOCKOUT_DURATION));
+                }
+            }
+            (valid ? codesValidatedCounter : codesFailedCounter).increment();
+            return valid;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.emailDomain = AuthEvent.domainOf(email);
+                event.method = "totp";
+                event.valid = valid;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Checks whether TOTP logins are currently locked for a user after too many failed attempts.
+     *
+     * @param user the user to check
+     * @return true if the user is locked out, false otherwise
+     */
+    private boolean isLockedOut(User user) {
+        return user.getTotpLockedUntil() != null && user.getTotpLockedUntil().isAfter(LocalDateTime.now());
+    }
+
+    /**
+     * Checks a code at the given time and records the matching step so it cannot be replayed.
+     *
+     * @param user the user whose secret the code is checked against
+     * @param totpCode the code to check
+     * @param epochSecond the time, in seconds since the epoch
+     * @return true if the code matches a time step within the window that is newer than the last accepted one, false otherwise
+     */
+    boolean verify(User user, String totpCode, long epochSecond) {
+        long step = findStep(user.getId(), user.getTotpSecret(), totpCode, epochSecond);
+        return step >= 0 && userService.advanceTotpLastStep(user.getId(), step);
+    }
+
+    /**
+     * Finds the time step within the window whose code matches, without recording it.
+     *
+     * @param userId the identifier of the user, used for logging
+     * @param secret the user's Base32 encoded secret
+     * @param totpCode the code to check
+     * @param epochSecond the time, in seconds since the epoch
+     * @return the matching time step, or -1 if the code does not match any step within the window
+     */
+    long findStep(Long userId, String secret, String totpCode, long epochSecond) {
+        int code = parseCode(totpCode);
+        if (code < 0) {
+            return -1;
+        }
+
+        MacPool.Entry entry = macPool.acquire();
+        try {
+            try {
+                entry.mac().init(new SecretKeySpec(decodeBase32(secret), HMAC_ALGORITHM));
+            } catch (InvalidKeyException | IllegalArgumentException e) {
+                log.error("Invalid TOTP secret for user {}", userId, e);
+                return -1;
+            }
+
+            long currentStep = epochSecond / TOTP_PERIOD;
+            for (long step = currentStep - TOTP_WINDOW; step <= currentStep + TOTP_WINDOW; step++) {
+                if (generateCode(entry, step) == code) {
+                    return step;
+                }
+            }
+            return -1;
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * Computes the HOTP value for a time step using the already initialised {@link Mac} of a held pool entry.
+     * The counter and the HMAC output share the entry's scratch buffer, so no memory is allocated.
+     *
+     * @param entry the held pool entry whose Mac is initialised with the user's key
+     * @param step the time step used as the HOTP counter
+     * @return the numeric code for the time step
+     */
+    private int generateCode(MacPool.Entry entry, long step) {
+        Mac mac = entry.mac();
+        byte[] scratch = entry.scratch();
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            scratch[i] = (byte) step;
+            step >>>= 8;
+        }
+
+        try {
+            mac.update(scratch, 0, Long.BYTES);
+            mac.doFinal(scratch, Long.BYTES);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+
+        int offset = Long.BYTES + (scratch[Long.BYTES + HMAC_SHA1_LENGTH - 1] & 0x0f);
+        int binary = ((scratch[offset] & 0x7f) << 24)
+                | ((scratch[offset + 1] & 0xff) << 16)
+                | ((scratch[offset + 2] & 0xff) << 8)
+                | (scratch[offset + 3] & 0xff);
+        return binary % POWERS_OF_TEN[TOTP_DIGITS];
+    }
+
+    /**
+     * Parses a numeric code of exactly {@code TOTP_DIGITS} digits without allocating.
+     *
+     * @param totpCode the code to parse
+     * @return the numeric value of the code, or -1 if it is not a valid code
+     */
+    private int parseCode(String totpCode) {
+        if (totpCode == null || totpCode.length() != TOTP_DIGITS) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 0; i < totpCode.length(); i++) {
+            char c = totpCode.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code;
+    }
+
+    /**
+     * Builds the {@code otpauth://} provisioning URI understood by authenticator apps.
+     *
+     * @param email the email address used as the account name
+     * @param secret the Base32 encoded secret
+     * @return the provisioning URI
+     */
+    private String buildProvisioningUri(String email, String secret) {
+        return "otpauth://totp/" + urlEncode(TOTP_ISSUER + ":" + email)
+                + "?secret=" + secret
+                + "&issuer=" + urlEncode(TOTP_ISSUER)
+                + "&algorithm=SHA1"
+                + "&digits=" + TOTP_DIGITS
+                + "&period=" + TOTP_PERIOD;
+    }
+
+    private static String urlEncode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static Mac createMac() {
+        try {
+            return Mac.getInstance(HMAC_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encodes bytes as unpadded RFC 4648 Base32, as expected by authenticator apps.
+     *
+     * @param data the bytes to encode
+     * @return the Base32 string
+     */
+    static String encodeBase32(byte[] data) {
+        StringBuilder encoded = new StringBuilder((data.length * 8 + 4) / 5);
+        int buffer = 0;
+        int bits = 0;
+        for (byte b : data) {
+            buffer = (buffer << 8) | (b & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                encoded.append(BASE32_ALPHABET[(buffer >>> (bits - 5)) & 0x1f]);
+                bits -= 5;
+            }
+        }
+        if (bits > 0) {
+            encoded.append(BASE32_ALPHABET[(buffer << (5 - bits)) & 0x1f]);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decodes an unpadded upper-case RFC 4648 Base32 string.
+     *
+     * @param encoded the Base32 string
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the string contains a character outside the Base32 alphabet
+     */
+    static byte[] decodeBase32(String encoded) {
+        byte[] decoded = new byte[encoded.length() * 5 / 8];
+        int buffer = 0;
+        int bits = 0;
+        int index = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            int value;
+            if (c >= 'A' && c <= 'Z') {
+                value = c - 'A';
+            } else if (c >= '2' && c <= '7') {
+                value = c - '2' + 26;
+            } else {
+                throw new IllegalArgumentException("Invalid Base32 character");
+            }
+            buffer = (buffer << 5) | value;
+            bits += 5;
+            if (bits >= 8) {
+                decoded[index++] = (byte) (buffer >>> (bits - 8));
+                bits -= 8;
+            }
+        }
+        return decoded;
+    }
+}
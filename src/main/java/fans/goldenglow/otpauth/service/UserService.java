@@ -2,13 +2,18 @@ package fans.goldenglow.otpauth.service;
 
 import fans.goldenglow.otpauth.model.User;
 import fans.goldenglow.otpauth.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
 
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.POSTGRES;
+
 /**
  * Service class responsible for managing user-related operations.
  * <p>
@@ -16,10 +21,18 @@ import java.util.Optional;
  * including searching for users by email, checking if a user exists by ID,
  * retrieving users by ID, and creating or updating user information.
  * It interacts with the database through the {@link UserRepository}.
+ * Lookups and writes are timed through Micrometer.
+ * <p>
+ * Every database call goes through the {@link ResilienceService}. Transactions are started inside the
+ * guarded call, so when the circuit breaker is open no connection is taken from the pool.
  */
 @Service
 public class UserService {
     private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ResilienceService resilienceService;
+    private final Timer userLookupTimer;
+    private final Timer userSaveTimer;
 
     /**
      * Constructs an instance of the UserService.
@@ -28,10 +41,22 @@ public class UserService {
      * interaction with the underlying data storage for performing user-related operations.
      *
      * @param userRepository the repository instance used to interact with the User entity
+     * @param transactionManager the PlatformTransactionManager used to run guarded transactions
+     * @param resilienceService the ResilienceService that guards calls to PostgreSQL
+     * @param meterRegistry the MeterRegistry used to time database operations
      */
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, PlatformTransactionManager transactionManager,
+                       ResilienceService resilienceService, MeterRegistry meterRegistry) {
         this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.resilienceService = resilienceService;
+        this.userLookupTimer = Timer.builder("otpauth.user.lookup")
+                .description("Time spent looking up users")
+                .register(meterRegistry);
+        this.userSaveTimer = Timer.builder("otpauth.user.save")
+                .description("Time spent saving users")
+                .register(meterRegistry);
     }
 
     /**
@@ -41,7 +66,7 @@ public class UserService {
      * @return an {@code Optional} containing the {@code User} if found, or an empty {@code Optional} if no user exists with the given email
      */
     public Optional<User> findByEmail(String email) {
-        return userRepository.findByEmail(email);
+        return resilienceService.call(POSTGRES, () -> userLookupTimer.record(() -> userRepository.findByEmail(email)));
     }
 
     /**
@@ -51,7 +76,7 @@ public class UserService {
      * @return {@code true} if an entity with the given ID exists, {@code false} otherwise
      */
     public boolean existsById(Long id) {
-        return userRepository.existsById(id);
+        return resilienceService.call(POSTGRES, () -> userLookupTimer.record(() -> userRepository.existsById(id)));
     }
 
     /**
@@ -61,31 +86,67 @@ public class UserService {
      * @return an {@code Optional} containing the {@code User} if found, or an empty {@code Optional} if no user exists with the given ID
      */
     public Optional<User> findById(Long id) {
-        return userRepository.findById(id);
+        return resilienceService.call(POSTGRES, () -> userLookupTimer.record(() -> userRepository.findById(id)));
     }
 
     /**
      * Creates a new user or updates an existing user based on the provided email address.
      * If a user with the given email already exists, their last login time is updated.
      * Otherwise, a new user entry is created with the current timestamp as the last login time.
-     * The user data is then persisted to the database.
+     * The user data is then persisted to the database in a single transaction.
      *
      * @param email the email address of the user to create or update
      * @return the saved {@code User} entity after creation or update
      */
-    @Transactional
     public User createOrUpdateUser(String email) {
-        Optional<User> existingUser = findByEmail(email);
+        return resilienceService.call(POSTGRES, () -> transactionTemplate.execute(status -> {
+            Optional<User> existingUser = userLookupTimer.record(() -> userRepository.findByEmail(email));
+
+            User user;
+            if (existingUser.isPresent()) {
+                user = existingUser.get();
+                user.setLastLogin(LocalDateTime.now());
+            } else {
+                user = new User(email);
+                user.setLastLogin(LocalDateTime.now());
+            }
+
+            return userSaveTimer.record(() -> userRepository.save(user));
+        }));
+    }
 
-        User user;
-        if (existingUser.isPresent()) {
-            user = existingUser.get();
-            user.setLastLogin(LocalDateTime.now());
-        } else {
-            user = new User(email);
-            user.setLastLogin(LocalDateTime.now());
-        }
+    /**
+     * Records a TOTP time step as the last one accepted for a user, if it is newer than the last one.
+     *
+     * @param id the ID of the user
+     * @param step the accepted time step
+     * @return {@code true} if the step was recorded, {@code false} if the same or a later step was already accepted
+     */
+    public boolean advanceTotpLastStep(Long id, long step) {
+        Integer updated = resilienceService.call(POSTGRES, () -> transactionTemplate.execute(status ->
+                userSaveTimer.record(() -> userRepository.advanceTotpLastStep(id, step))));
+        return updated != null && updated > 0;
+    }
 
-        return userRepository.save(user);
+    /**
+     * Counts a failed TOTP login for a user, locking TOTP logins until the given time once the limit is reached.
+     *
+     * @param id the ID of the user
+     * @param maxAttempts the number of failed attempts that locks TOTP logins
+     * @param lockedUntil the time until which TOTP logins are locked once the limit is reached
+     */
+    public void recordTotpFailure(Long id, int maxAttempts, LocalDateTime lockedUntil) {
+        resilienceService.run(POSTGRES, () -> transactionTemplate.executeWithoutResult(status ->
+                userSaveTimer.record(() -> userRepository.recordTotpFailure(id, maxAttempts, lockedUntil))));
+    }
+
+    /**
+     * Persists changes made to an existing user, such as an authenticator app enrolment.
+     *
+     * @param user the user entity to save
+     * @return the saved {@code User} entity
+     */
+    public User save(User user) {
+        return resilienceService.call(POSTGRES, () -> userSaveTimer.record(() -> userRepository.save(user)));
     }
 }
@@ -0,0 +1,111 @@
+package fans.goldenglow.otpauth.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service class responsible for generating numeric verification codes from a cryptographically secure source.
+ * <p>
+ * Entropy is drawn from {@link SecureRandom} in bulk into a fixed set of buffers, each with its own
+ * generator and lock. A thread always uses the same buffer, chosen from its thread id, so with up to
+ * twice as many threads as processors most threads effectively own a buffer and rarely contend.
+ * Buffers are shared rather than thread-local so that short-lived virtual threads do not each seed
+ * a new generator.
+ * <p>
+ * Digits are produced by rejection sampling: bytes of 250 or more are discarded, so every digit is
+ * uniformly distributed. Generating a code allocates only the returned string.
+ */
+@Service
+public class VerificationCodeGenerator {
+    @Value("${config.verification.code.length}")
+    private int VERIFICATION_CODE_LENGTH;
+
+    private static final int ENTROPY_BUFFER_SIZE = 512;
+    private static final int UNBIASED_BYTE_LIMIT = 250;
+
+    private final EntropyBuffer[] buffers;
+    private final int stripeMask;
+
+    /**
+     * Constructs a VerificationCodeGenerator with one entropy buffer per stripe.
+     * The number of stripes is the smallest power of two of at least twice the available processors.
+     */
+    public VerificationCodeGenerator() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        this.buffers = new EntropyBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            buffers[i] = new EntropyBuffer();
+        }
+        this.stripeMask = stripes - 1;
+    }
+
+    /**
+     * Generates a verification code of the configured length.
+     *
+     * @return a string of {@code config.verification.code.length} uniformly distributed decimal digits
+     */
+    public String generate() {
+        return generate(VERIFICATION_CODE_LENGTH);
+    }
+
+    /**
+     * Generates a verification code of the given length.
+     *
+     * @param length the number of digits in the code
+     * @return a string of {@code length} uniformly distributed decimal digits
+     */
+    public String generate(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Verification code length must be positive");
+        }
+        long threadId = Thread.currentThread().threadId();
+        int stripe = (int) (threadId ^ (threadId >>> 16)) & stripeMask;
+        return buffers[stripe].nextDigits(length);
+    }
+
+    /**
+     * A block of pre-generated random bytes with its own generator and a reusable output buffer.
+     */
+    private static final class EntropyBuffer {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final SecureRandom random = createSecureRandom();
+        private final byte[] entropy = new byte[ENTROPY_BUFFER_SIZE];
+        private char[] digits = new char[16];
+        private int position = ENTROPY_BUFFER_SIZE;
+
+        String nextDigits(int length) {
+            lock.lock();
+            try {
+                if (digits.length < length) {
+                    digits = new char[length];
+                }
+                for (int i = 0; i < length; i++) {
+                    int value;
+                    do {
+                        if (position == ENTROPY_BUFFER_SIZE) {
+                            random.nextBytes(entropy);
+                            position = 0;
+                        }
+                        value = entropy[position++] & 0xff;
+                    } while (value >= UNBIASED_BYTE_LIMIT);
+                    digits[i] = (char) ('0' + value % 10);
+                }
+                return new String(digits, 0, length);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private static SecureRandom createSecureRandom() {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        }
+    }
+}
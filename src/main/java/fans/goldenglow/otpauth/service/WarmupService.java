@@ -0,0 +1,173 @@
+package fans.goldenglow.otpauth.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fans.goldenglow.otpauth.dto.TokenRequest;
+import fans.goldenglow.otpauth.dto.TokenResponse;
+import fans.goldenglow.otpauth.dto.VerificationCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class responsible for warming up the JIT compiler before the node accepts traffic.
+ * <p>
+ * The warm-up runs as an {@link ApplicationRunner}, so Spring Boot only reports the node as ready once
+ * it has finished. It repeatedly exercises the hot paths of a login with synthetic data: JWT signing
+ * and verification (through both the resource server decoder and the refresh verifier), Jackson binding
+ * of {@link TokenRequest} and {@link TokenResponse}, verification code generation, Thymeleaf rendering
+ * of the verification email, and serialization of a {@link VerificationCode} with the Redis value
+ * serializer. Nothing is sent to Redis, PostgreSQL or the SMTP server, so no emails are sent and no
+ * users or codes are persisted. The warm-up calls the uninstrumented variants of the token and email
+ * methods and verifies with its own instance of the resource server decoder, so the synthetic work does
+ * not show up in the per-stage timers or Flight Recorder events.
+ * <p>
+ * The work is done in rounds. The warm-up stops once the JIT compiler has spent at most
+ * {@code config.warmup.stable_compilation_ms} compiling during {@code config.warmup.stable_rounds}
+ * consecutive rounds, or when {@code config.warmup.max_duration} seconds have passed. Its duration is
+ * recorded in the {@code otpauth.warmup} timer, tagged with the reason it stopped.
+ */
+@Slf4j
+@Service
+public class WarmupService implements ApplicationRunner {
+    @Value("${config.warmup.enabled}")
+    private boolean WARMUP_ENABLED;
+    @Value("${config.warmup.max_duration}")
+    private long WARMUP_MAX_DURATION;
+    @Value("${config.warmup.round_iterations}")
+    private int WARMUP_ROUND_ITERATIONS;
+    @Value("${config.warmup.stable_rounds}")
+    private int WARMUP_STABLE_ROUNDS;
+    @Value("${config.warmup.stable_compilation_ms}")
+    private long WARMUP_STABLE_COMPILATION_MS;
+
+    private static final String SYNTHETIC_USER_ID = "0";
+    private static final String SYNTHETIC_TOKEN_REQUEST =
+            "{\"email\":\"warmup@warmup.invalid\",\"verification_code\":\"000000\"}";
+    private static final String ACCESS_TOKEN_SCOPE = "profile";
+
+    private final TokenService tokenService;
+    private final JwtDecoder jwtDecoder;
+    private final EmailService emailService;
+    private final VerificationCodeGenerator verificationCodeGenerator;
+    private final RedisSerializer<?> redisValueSerializer;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructs a WarmupService instance with dependencies injected.
+     *
+     * @param tokenService the TokenService used to sign and verify synthetic tokens
+     * @param securityService the SecurityService whose secret an uninstrumented resource server decoder is built with
+     * @param emailService the EmailService used to render, but not send, verification emails
+     * @param verificationCodeGenerator the VerificationCodeGenerator used to create synthetic codes
+     * @param redisTemplate the RedisTemplate whose value serializer is exercised without contacting Redis
+     * @param objectMapper the ObjectMapper used by Spring MVC to bind requests and responses
+     * @param meterRegistry the MeterRegistry used to record the warm-up duration
+     */
+    @Autowired
+    public WarmupService(TokenService tokenService, SecurityService securityService, EmailService emailService,
+                         VerificationCodeGenerator verificationCodeGenerator,
+                         RedisTemplate<String, VerificationCode> redisTemplate, ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry) {
+        this.tokenService = tokenService;
+        this.jwtDecoder = NimbusJwtDecoder.withSecretKey(securityService.getSecret()).build();
+        this.emailService = emailService;
+        this.verificationCodeGenerator = verificationCodeGenerator;
+        this.redisValueSerializer = redisTemplate.getValueSerializer();
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs the warm-up, if enabled, before the application reports itself as ready.
+     * A failure during the warm-up is logged and never prevents the application from starting.
+     *
+     * @param args the application arguments, unused
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!WARMUP_ENABLED) {
+            return;
+        }
+
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        boolean monitorCompilation = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(WARMUP_MAX_DURATION);
+        long lastCompilationTime = monitorCompilation ? compilation.getTotalCompilationTime() : 0;
+        int stableRounds = 0;
+        int rounds = 0;
+        String stopReason = "time_budget";
+
+        try {
+            while (System.nanoTime() < deadline) {
+                for (int i = 0; i < WARMUP_ROUND_ITERATIONS; i++) {
+                    exercise();
+                }
+                rounds++;
+
+                if (monitorCompilation) {
+                    long compilationTime = compilation.getTotalCompilationTime();
+                    stableRounds = compilationTime - lastCompilationTime <= WARMUP_STABLE_COMPILATION_MS
+                            ? stableRounds + 1 : 0;
+                    lastCompilationTime = compilationTime;
+                    if (stableRounds >= WARMUP_STABLE_ROUNDS) {
+                        stopReason = "stable";
+                        break;
+                    }
+                }
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Warm-up aborted after {} rounds", rounds, e);
+            stopReason = "failed";
+        }
+
+        long elapsed = System.nanoTime() - start;
+        Timer.builder("otpauth.warmup")
+                .description("Time spent warming up before accepting traffic")
+                .tag("stop_reason", stopReason)
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Warm-up finished after {} rounds in {} ms ({})", rounds,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), stopReason);
+    }
+
+    /**
+     * Runs one synthetic pass over the login hot paths without touching Redis, PostgreSQL or SMTP.
+     *
+     * @throws JsonProcessingException if the synthetic request or response cannot be bound
+     */
+    private void exercise() throws JsonProcessingException {
+        String token = tokenService.signToken(SYNTHETIC_USER_ID, 1, ACCESS_TOKEN_SCOPE);
+        jwtDecoder.decode(token);
+        tokenService.decodeToken(token);
+
+        objectMapper.readValue(SYNTHETIC_TOKEN_REQUEST, TokenRequest.class);
+        objectMapper.writeValueAsString(new TokenResponse(token, token));
+
+        String code = verificationCodeGenerator.generate();
+        emailService.render(code);
+        redisValueSerializer.deserialize(serialize(new VerificationCode(code, LocalDateTime.now())));
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(VerificationCode verificationCode) {
+        return ((RedisSerializer<Object>) redisValueSerializer).serialize(verificationCode);
+    }
+}
@@ -0,0 +1,139 @@
+package fans.goldenglow.otpauth.jfr;
+
+import fans.goldenglow.otpauth.dto.TokenResponse;
+import fans.goldenglow.otpauth.dto.VerificationCode;
+import fans.goldenglow.otpauth.model.User;
+import fans.goldenglow.otpauth.service.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.IContext;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthEventTests {
+    private static final String EMAIL = "User@Example.com";
+
+    @TempDir
+    Path tempDir;
+
+    private ValueOperations<String, VerificationCode> valueOperations;
+    private TokenService tokenService;
+    private EmailService emailService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, VerificationCode> redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        User user = new User(EMAIL);
+        user.setId(42L);
+        UserService userService = mock(UserService.class);
+        when(userService.findByEmail(anyString())).thenReturn(Optional.empty());
+        when(userService.createOrUpdateUser(anyString())).thenReturn(user);
+        when(userService.existsById(42L)).thenReturn(true);
+
+        VerificationCodeGenerator verificationCodeGenerator = new VerificationCodeGenerator();
+        ReflectionTestUtils.setField(verificationCodeGenerator, "VERIFICATION_CODE_LENGTH", 6);
+
+        tokenService = new TokenService(redisTemplate, userService, verificationCodeGenerator, null, null,
+                new SecurityService(), TestResilienceServices.fromApplicationYaml(new SimpleMeterRegistry()),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenService, "VERIFICATION_CODE_EXPIRATION", 5L);
+        ReflectionTestUtils.setField(tokenService, "JWT_ISSUER", "test");
+        ReflectionTestUtils.setField(tokenService, "ACCESS_TOKEN_EXPIRATION", 5L);
+        ReflectionTestUtils.setField(tokenService, "REFRESH_TOKEN_EXPIRATION", 15L);
+
+        JavaMailSender javaMailSender = mock(JavaMailSender.class);
+        when(javaMailSender.createMimeMessage()).thenReturn(new MimeMessage((Session) null));
+        TemplateEngine templateEngine = mock(TemplateEngine.class);
+        when(templateEngine.process(eq("email-verification"), any(IContext.class))).thenReturn("<html></html>");
+        emailService = new EmailService(javaMailSender, templateEngine,
+                TestResilienceServices.fromApplicationYaml(new SimpleMeterRegistry()), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(emailService, "emailFrom", "noreply@example.com");
+    }
+
+    @Test
+    void loginFlowEmitsPipelineEvents() throws Exception {
+        Path file = tempDir.resolve("auth.jfr");
+        try (Recording recording = new Recording()) {
+            for (Class<? extends AuthEvent> eventClass : List.of(CodeIssueEvent.class, CodeValidateEvent.class,
+                    UserUpsertEvent.class, EmailRenderEvent.class, EmailSendEvent.class, TokenMintEvent.class,
+                    TokenRefreshEvent.class)) {
+                recording.enable(eventClass).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            runLoginFlow();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        List<String> names = events.stream().map(event -> event.getEventType().getName()).toList();
+        assertTrue(names.containsAll(List.of(
+                "fans.goldenglow.otpauth.CodeIssue",
+                "fans.goldenglow.otpauth.CodeValidate",
+                "fans.goldenglow.otpauth.UserUpsert",
+                "fans.goldenglow.otpauth.EmailRender",
+                "fans.goldenglow.otpauth.EmailSend",
+                "fans.goldenglow.otpauth.TokenMint",
+                "fans.goldenglow.otpauth.TokenRefresh"
+        )), names.toString());
+
+        RecordedEvent codeIssue = events.stream()
+                .filter(event -> event.getEventType().getName().equals("fans.goldenglow.otpauth.CodeIssue"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("example.com", codeIssue.getString("emailDomain"));
+        assertTrue(codeIssue.getBoolean("issued"));
+    }
+
+    @Test
+    void eventsAreDisabledInDefaultRecording() throws Exception {
+        Path file = tempDir.resolve("default.jfr");
+        try (Recording recording = new Recording(Configuration.getConfiguration("default"))) {
+            recording.start();
+            runLoginFlow();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        assertTrue(RecordingFile.readAllEvents(file).stream()
+                .noneMatch(event -> event.getEventType().getName().startsWith("fans.goldenglow.otpauth.")));
+    }
+
+    private void runLoginFlow() throws Exception {
+        String verificationCode = tokenService.createVerificationCode(EMAIL);
+        assertNotNull(verificationCode);
+        emailService.sendVerificationEmail(EMAIL, verificationCode);
+        when(valueOperations.get(anyString())).thenReturn(new VerificationCode(verificationCode, LocalDateTime.now()));
+        assertTrue(tokenService.validateVerificationCode(EMAIL, verificationCode));
+        TokenResponse tokenResponse = tokenService.generateTokens(EMAIL);
+        tokenService.refreshToken(tokenResponse.getRefreshToken());
+    }
+}
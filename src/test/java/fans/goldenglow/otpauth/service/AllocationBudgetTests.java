@@ -0,0 +1,185 @@
+package fans.goldenglow.otpauth.service;
+
+import fans.goldenglow.otpauth.config.SecurityConfig;
+import fans.goldenglow.otpauth.dto.VerificationCode;
+import fans.goldenglow.otpauth.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Fails the build when a request hot path allocates more bytes per operation than its recorded budget.
+ * <p>
+ * Each operation is warmed up so the JIT has settled, then measured with the current thread's
+ * allocation counter. Redis and the user repository are replaced by stub-only Mockito mocks, whose
+ * own allocations are part of the recorded budgets.
+ * <p>
+ * Budgets live in {@code src/test/resources/allocation-budgets.properties}. Running the tests with
+ * {@code -PrebaselineAllocations} updates the budgets of the operations measured in that run from the
+ * current measurements plus headroom, and keeps the budgets of any operations that were not run.
+ * An operation without a budget fails, so a missing entry cannot pass unnoticed.
+ */
+class AllocationBudgetTests {
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 10_000;
+    private static final double REBASELINE_HEADROOM = 0.10;
+    private static final String EMAIL = "user@example.com";
+    private static final String VERIFICATION_CODE = "123456";
+
+    private static final Properties budgets = new Properties();
+    private static final TreeMap<String, Long> measurements = new TreeMap<>();
+    private static final boolean rebaseline = Boolean.getBoolean("allocation.rebaseline");
+
+    private TokenService tokenService;
+    private JwtDecoder jwtDecoder;
+    private String refreshToken;
+    private String accessToken;
+
+    @BeforeAll
+    static void loadBudgets() throws IOException {
+        String path = System.getProperty("allocation.budgets");
+        if (path != null && Files.exists(Path.of(path))) {
+            try (Reader reader = Files.newBufferedReader(Path.of(path))) {
+                budgets.load(reader);
+            }
+        } else {
+            try (InputStream in = AllocationBudgetTests.class.getResourceAsStream("/allocation-budgets.properties")) {
+                if (in != null) {
+                    budgets.load(in);
+                }
+            }
+        }
+    }
+
+    @AfterAll
+    static void writeBudgets() throws IOException {
+        String path = System.getProperty("allocation.budgets");
+        if (!rebaseline || path == null) {
+            return;
+        }
+        TreeMap<String, String> merged = new TreeMap<>();
+        if (Files.exists(Path.of(path))) {
+            Properties existing = new Properties();
+            try (Reader reader = Files.newBufferedReader(Path.of(path))) {
+                existing.load(reader);
+            }
+            existing.stringPropertyNames().forEach(operation -> merged.put(operation, existing.getProperty(operation).trim()));
+        }
+        measurements.forEach((operation, bytes) ->
+                merged.put(operation, Long.toString((long) Math.ceil(bytes * (1 + REBASELINE_HEADROOM)))));
+
+        List<String> lines = new ArrayList<>();
+        lines.add("# Bytes allocated per operation, checked by AllocationBudgetTests.");
+        lines.add("# Regenerate with: ./gradlew test --tests '*AllocationBudgetTests' -PrebaselineAllocations");
+        lines.add("# and commit the result together with the change that moved the numbers.");
+        merged.forEach((operation, bytes) -> lines.add(operation + "=" + bytes));
+        Files.write(Path.of(path), lines);
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, VerificationCode> redisTemplate = mock(RedisTemplate.class, withSettings().stubOnly());
+        ValueOperations<String, VerificationCode> valueOperations = mock(ValueOperations.class, withSettings().stubOnly());
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenReturn(new VerificationCode(VERIFICATION_CODE, LocalDateTime.now()));
+
+        User user = new User(EMAIL);
+        user.setId(42L);
+        UserService userService = mock(UserService.class, withSettings().stubOnly());
+        when(userService.findByEmail(anyString())).thenReturn(Optional.of(user));
+        when(userService.createOrUpdateUser(anyString())).thenReturn(user);
+        when(userService.existsById(42L)).thenReturn(true);
+
+        SecurityService securityService = new SecurityService();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        tokenService = new TokenService(redisTemplate, userService, new VerificationCodeGenerator(), null, null, securityService,
+                TestResilienceServices.fromApplicationYaml(meterRegistry), meterRegistry);
+        ReflectionTestUtils.setField(tokenService, "VERIFICATION_CODE_EXPIRATION", 5L);
+        ReflectionTestUtils.setField(tokenService, "JWT_ISSUER", "test");
+        ReflectionTestUtils.setField(tokenService, "ACCESS_TOKEN_EXPIRATION", 5L);
+        ReflectionTestUtils.setField(tokenService, "REFRESH_TOKEN_EXPIRATION", 15L);
+
+        jwtDecoder = new SecurityConfig(securityService, null, meterRegistry, null).jwtDecoder();
+        accessToken = tokenService.generateTokens(EMAIL).getAccessToken();
+        refreshToken = tokenService.generateTokens(EMAIL).getRefreshToken();
+    }
+
+    @Test
+    void generateTokens() throws Exception {
+        assertWithinBudget("token.generateTokens", () -> tokenService.generateTokens(EMAIL));
+    }
+
+    @Test
+    void refreshToken() throws Exception {
+        assertWithinBudget("token.refreshToken", () -> tokenService.refreshToken(refreshToken));
+    }
+
+    @Test
+    void validateVerificationCode() throws Exception {
+        assertWithinBudget("token.validateVerificationCode", () -> tokenService.validateVerificationCode(EMAIL, VERIFICATION_CODE));
+    }
+
+    @Test
+    void decodeJwt() throws Exception {
+        assertWithinBudget("jwt.decode", () -> jwtDecoder.decode(accessToken));
+    }
+
+    private static void assertWithinBudget(String operation, Operation op) throws Exception {
+        long measured = measureBytesPerOperation(op);
+        measurements.put(operation, measured);
+        if (rebaseline) {
+            return;
+        }
+
+        String budget = budgets.getProperty(operation);
+        if (budget == null) {
+            fail("No allocation budget recorded for " + operation
+                    + " (measured " + measured + " bytes/op); run with -PrebaselineAllocations to record one");
+        }
+        assertTrue(measured <= Long.parseLong(budget.trim()), operation + " allocated " + measured
+                + " bytes/op, budget is " + budget + " bytes/op");
+    }
+
+    private static long measureBytesPerOperation(Operation op) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            op.run();
+        }
+        long before = threadMXBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            op.run();
+        }
+        long after = threadMXBean.getCurrentThreadAllocatedBytes();
+        return (after - before) / MEASURED_ITERATIONS;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws Exception;
+    }
+}
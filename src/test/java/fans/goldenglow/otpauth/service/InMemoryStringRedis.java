@@ -0,0 +1,64 @@
+package fans.goldenglow.otpauth.service;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * A map-backed {@link StringRedisTemplate} for tests that construct services by hand.
+ * <p>
+ * The template and its value operations are Mockito mocks, so tests can verify calls and override
+ * single operations with their own stubs. Expiry times are accepted but ignored.
+ */
+public final class InMemoryStringRedis {
+    private final Map<String, String> store = new ConcurrentHashMap<>();
+    private final StringRedisTemplate template = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+
+    /**
+     * Creates an empty store and stubs {@code set}, {@code get}, {@code multiGet}, {@code setIfAbsent},
+     * {@code hasKey} and {@code delete} against it.
+     */
+    public InMemoryStringRedis() {
+        when(template.opsForValue()).thenReturn(valueOperations);
+        doAnswer(invocation -> store.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(valueOperations).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> store.get(invocation.<String>getArgument(0)));
+        when(valueOperations.multiGet(anyCollection())).thenAnswer(invocation -> invocation.<Collection<String>>getArgument(0)
+                .stream().map(store::get).collect(Collectors.toList()));
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class)))
+                .thenAnswer(invocation -> store.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(template.hasKey(anyString())).thenAnswer(invocation -> store.containsKey(invocation.<String>getArgument(0)));
+        when(template.delete(anyString())).thenAnswer(invocation -> store.remove(invocation.<String>getArgument(0)) != null);
+    }
+
+    /**
+     * @return the StringRedisTemplate to hand to the service under test
+     */
+    public StringRedisTemplate template() {
+        return template;
+    }
+
+    /**
+     * @return the value operations returned by {@link StringRedisTemplate#opsForValue()}
+     */
+    public ValueOperations<String, String> valueOperations() {
+        return valueOperations;
+    }
+
+    /**
+     * @return the live contents of the store, by key
+     */
+    public Map<String, String> store() {
+        return store;
+    }
+}
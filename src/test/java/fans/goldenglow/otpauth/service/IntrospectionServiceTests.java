@@ -0,0 +1,139 @@
+package fans.goldenglow.otpauth.service;
+
+import fans.goldenglow.otpauth.dto.ReferenceTokenClaims;
+import fans.goldenglow.otpauth.dto.TokenIntrospection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class IntrospectionServiceTests {
+    private TokenService tokenService;
+    private ReferenceTokenService referenceTokenService;
+    private IntrospectionService introspectionService;
+    private ExecutorService executor;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        tokenService = new TokenService(mock(RedisTemplate.class), mock(UserService.class),
+                new VerificationCodeGenerator(), null, null, new SecurityService(),
+                TestResilienceServices.fromApplicationYaml(meterRegistry), meterRegistry);
+        ReflectionTestUtils.setField(tokenService, "JWT_ISSUER", "test");
+
+        executor = Executors.newFixedThreadPool(4);
+        referenceTokenService = mock(ReferenceTokenService.class);
+        introspectionService = new IntrospectionService(tokenService, referenceTokenService, executor, 1000, meterRegistry);
+        ReflectionTestUtils.setField(introspectionService, "PARALLEL_THRESHOLD", 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void reportsEachTokenInRequestOrder() {
+        String access = tokenService.generateToken("42", 5, new String[]{"profile"});
+        String refresh = tokenService.generateToken("42", 15, new String[]{"refresh_token"});
+
+        List<TokenIntrospection> results = introspectionService.introspect(List.of(access, "not-a-token", refresh));
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isActive());
+        assertEquals("42", results.get(0).getSubject());
+        assertEquals("profile", results.get(0).getScope());
+        assertNotNull(results.get(0).getExpiresAt());
+        assertFalse(results.get(1).isActive());
+        assertNull(results.get(1).getSubject());
+        assertEquals("refresh_token", results.get(2).getScope());
+    }
+
+    @Test
+    void verifiesLargeBatchesInParallel() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tokens.add(i % 10 == 0 ? "invalid-" + i : tokenService.generateToken(String.valueOf(i), 5, new String[]{"profile"}));
+        }
+
+        List<TokenIntrospection> results = introspectionService.introspect(tokens);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(i % 10 != 0, results.get(i).isActive());
+            if (i % 10 != 0) {
+                assertEquals(String.valueOf(i), results.get(i).getSubject());
+            }
+        }
+    }
+
+    @Test
+    void servesRepeatedTokensFromCache() {
+        String access = tokenService.generateToken("42", 5, new String[]{"profile"});
+
+        introspectionService.introspect(List.of(access));
+        introspectionService.introspect(List.of(access));
+
+        assertEquals(1, meterRegistry.get("otpauth.token.verify").timer().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "introspection").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void doesNotCacheInvalidTokens() {
+        introspectionService.introspect(List.of("not.a.token"));
+        introspectionService.introspect(List.of("not.a.token"));
+
+        assertEquals(2, meterRegistry.get("otpauth.token.verify").timer().count());
+    }
+
+    @Test
+    void resolvesReferenceTokensOnEveryCall() {
+        long expiresAt = Instant.now().plusSeconds(300).getEpochSecond();
+        when(referenceTokenService.resolve("reference"))
+                .thenReturn(Optional.of(new ReferenceTokenClaims("42", "profile", expiresAt)))
+                .thenReturn(Optional.empty());
+
+        TokenIntrospection first = introspectionService.introspect(List.of("reference")).getFirst();
+        TokenIntrospection second = introspectionService.introspect(List.of("reference")).getFirst();
+
+        assertTrue(first.isActive());
+        assertEquals("42", first.getSubject());
+        assertEquals(expiresAt, first.getExpiresAt());
+        assertFalse(second.isActive());
+        verify(referenceTokenService, times(2)).resolve("reference");
+    }
+
+    @Test
+    void rethrowsDependencyFailuresFromParallelSlices() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            tokens.add("reference-" + i);
+        }
+        when(referenceTokenService.resolve(anyString())).thenReturn(Optional.empty());
+        when(referenceTokenService.resolve("reference-1"))
+                .thenThrow(new DependencyUnavailableException(ResilienceService.Dependency.REDIS, new IllegalStateException("open")));
+
+        assertThrows(DependencyUnavailableException.class, () -> introspectionService.introspect(tokens));
+    }
+
+    @Test
+    void reportsReferenceTokensAsInactiveWhenDisabled() {
+        IntrospectionService withoutReferenceTokens = new IntrospectionService(tokenService, null, executor, 1000, meterRegistry);
+
+        assertFalse(withoutReferenceTokens.introspect(List.of("reference")).getFirst().isActive());
+    }
+}
@@ -0,0 +1,109 @@
+package fans.goldenglow.otpauth.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fans.goldenglow.otpauth.dto.ReferenceTokenClaims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReferenceTokenServiceTests {
+    private Map<String, String> store;
+    private StringRedisTemplate stringRedisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private MessageListener revocationListener;
+    private ReferenceTokenService referenceTokenService;
+
+    @BeforeEach
+    void setUp() {
+        InMemoryStringRedis redis = new InMemoryStringRedis();
+        store = redis.store();
+        stringRedisTemplate = redis.template();
+        valueOperations = redis.valueOperations();
+
+        RedisMessageListenerContainer listenerContainer = mock(RedisMessageListenerContainer.class);
+        referenceTokenService = new ReferenceTokenService(stringRedisTemplate, listenerContainer, new ObjectMapper(),
+                1000, TestResilienceServices.fromApplicationYaml(new SimpleMeterRegistry()), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(referenceTokenService, "NEAR_CACHE_MAX_TTL", 30L);
+
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(listener.capture(), any(Topic.class));
+        revocationListener = listener.getValue();
+    }
+
+    @Test
+    void issuesShortRandomTokensWithoutStoringThemInClear() {
+        String token = referenceTokenService.issue("42", 5, new String[]{"profile"});
+
+        assertEquals(43, token.length());
+        assertEquals(-1, token.indexOf('.'));
+        assertNotEquals(token, referenceTokenService.issue("42", 5, new String[]{"profile"}));
+        assertTrue(store.keySet().stream().noneMatch(key -> key.contains(token)));
+    }
+
+    @Test
+    void resolvesFromNearCacheAfterFirstLookup() {
+        String token = referenceTokenService.issue("42", 5, new String[]{"profile"});
+
+        Optional<ReferenceTokenClaims> first = referenceTokenService.resolve(token);
+        Optional<ReferenceTokenClaims> second = referenceTokenService.resolve(token);
+
+        assertTrue(first.isPresent());
+        assertEquals("42", first.get().getSubject());
+        assertEquals(first, second);
+        verify(valueOperations, times(1)).get(anyString());
+    }
+
+    @Test
+    void revokedTokensStopResolvingImmediately() {
+        String token = referenceTokenService.issue("42", 5, new String[]{"profile"});
+        referenceTokenService.resolve(token);
+
+        assertTrue(referenceTokenService.revoke(token));
+
+        assertTrue(referenceTokenService.resolve(token).isEmpty());
+        verify(stringRedisTemplate).convertAndSend(eq("reference-token-revocations"), anyString());
+    }
+
+    @Test
+    void revocationsFromOtherNodesEvictTheNearCache() {
+        String token = referenceTokenService.issue("42", 5, new String[]{"profile"});
+        referenceTokenService.resolve(token);
+        String key = store.keySet().iterator().next();
+
+        store.remove(key);
+        revocationListener.onMessage(new DefaultMessage("reference-token-revocations".getBytes(StandardCharsets.UTF_8),
+                key.substring("reference:".length()).getBytes(StandardCharsets.UTF_8)), null);
+
+        assertTrue(referenceTokenService.resolve(token).isEmpty());
+    }
+
+    @Test
+    void introspectsIntoScopeAuthorities() {
+        String token = referenceTokenService.issue("42", 5, new String[]{"profile"});
+
+        OAuth2AuthenticatedPrincipal principal = referenceTokenService.introspect(token);
+
+        assertEquals("42", principal.getName());
+        assertTrue(principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).anyMatch("SCOPE_profile"::equals));
+        assertThrows(BadOpaqueTokenException.class, () -> referenceTokenService.introspect("unknown"));
+    }
+}
@@ -0,0 +1,44 @@
+package fans.goldenglow.otpauth.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.POSTGRES;
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.REDIS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilienceServiceTests {
+    private final ResilienceService resilienceService = TestResilienceServices.fromApplicationYaml(new SimpleMeterRegistry());
+
+    @Test
+    void failuresAreRethrownUntilTheCircuitBreakerOpens() {
+        AtomicInteger attempts = new AtomicInteger();
+        Runnable failingCall = () -> {
+            attempts.incrementAndGet();
+            throw new RedisConnectionFailureException("down");
+        };
+
+        for (int i = 0; i < 20; i++) {
+            assertThrows(RedisConnectionFailureException.class, () -> resilienceService.run(REDIS, failingCall));
+        }
+        DependencyUnavailableException e = assertThrows(DependencyUnavailableException.class,
+                () -> resilienceService.run(REDIS, failingCall));
+
+        assertEquals(REDIS, e.getDependency());
+        assertEquals(20, attempts.get());
+    }
+
+    @Test
+    void dependenciesAreIsolatedFromEachOther() {
+        for (int i = 0; i < 20; i++) {
+            assertThrows(RedisConnectionFailureException.class, () -> resilienceService.run(REDIS, () -> {
+                throw new RedisConnectionFailureException("down");
+            }));
+        }
+
+        assertEquals("ok", resilienceService.call(POSTGRES, () -> "ok"));
+    }
+}
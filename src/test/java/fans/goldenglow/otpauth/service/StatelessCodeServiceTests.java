@@ -0,0 +1,143 @@
+package fans.goldenglow.otpauth.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StatelessCodeServiceTests {
+    private static final String EMAIL = "user@example.com";
+    private static final long PERIOD = 150;
+    private static final long NOW = 1_700_000_000L / PERIOD * PERIOD + 10;
+
+    private InMemoryStringRedis redis;
+    private StatelessCodeService statelessCodeService;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InMemoryStringRedis();
+        statelessCodeService = new StatelessCodeService(redis.template(), "c3RhdGVsZXNzLWNvZGUtdGVzdC1rZXktMzItYnl0ZXM=",
+                TestResilienceServices.fromApplicationYaml(new SimpleMeterRegistry()), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(statelessCodeService, "VERIFICATION_CODE_LENGTH", 6);
+        ReflectionTestUtils.setField(statelessCodeService, "RESEND_THRESHOLD", 60L);
+        ReflectionTestUtils.setField(statelessCodeService, "STATELESS_PERIOD", PERIOD);
+    }
+
+    @Test
+    void issuingIsDeterministicPerWindowUntilTheCodeIsUsed() {
+        String code = statelessCodeService.generate(EMAIL, NOW);
+
+        assertEquals(6, code.length());
+        assertTrue(code.chars().allMatch(Character::isDigit));
+        allowResend();
+        assertEquals(code, statelessCodeService.generate(" User@Example.COM ", NOW + 100));
+        assertNotEquals(code, statelessCodeService.generate("other@example.com", NOW));
+    }
+
+    @Test
+    void codeRequestedAgainAfterLoginInTheSameWindowIsANewCode() {
+        String first = statelessCodeService.generate(EMAIL, NOW);
+        assertTrue(statelessCodeService.matches(EMAIL, first, NOW + 1));
+        assertTrue(statelessCodeService.consume(EMAIL, first, NOW + 1));
+
+        allowResend();
+        String second = statelessCodeService.generate(EMAIL, NOW + 70);
+
+        assertNotNull(second);
+        assertNotEquals(first, second);
+        assertFalse(statelessCodeService.matches(EMAIL, first, NOW + 71));
+        assertTrue(statelessCodeService.matches(EMAIL, second, NOW + 71));
+        assertTrue(statelessCodeService.consume(EMAIL, second, NOW + 71));
+        // Still accepted in the following window, like any other code.
+        allowResend();
+        String third = statelessCodeService.generate(EMAIL, NOW + 80);
+        assertTrue(statelessCodeService.consume(EMAIL, third, NOW + PERIOD));
+    }
+
+    @Test
+    void requestingAgainWithinTheResendThresholdIsRefused() {
+        assertNotNull(statelessCodeService.generate(EMAIL, NOW));
+
+        assertNull(statelessCodeService.generate(EMAIL, NOW + 1));
+        assertNull(statelessCodeService.generate(" User@Example.COM ", NOW + 1));
+        verify(redis.valueOperations(), times(3)).setIfAbsent("verification-sent:" + EMAIL, "1", 60L, TimeUnit.SECONDS);
+
+        statelessCodeService.withdraw(EMAIL);
+        assertNotNull(statelessCodeService.generate(EMAIL, NOW + 2));
+    }
+
+    @Test
+    void stopsIssuingOnceEveryCodeOfTheWindowHasBeenUsed() {
+        for (int i = 0; i < 4; i++) {
+            allowResend();
+            assertTrue(statelessCodeService.consume(EMAIL, statelessCodeService.generate(EMAIL, NOW + i), NOW + i));
+        }
+
+        allowResend();
+        assertNull(statelessCodeService.generate(EMAIL, NOW + 5));
+        allowResend();
+        assertNotNull(statelessCodeService.generate(EMAIL, NOW + PERIOD));
+    }
+
+    @Test
+    void acceptsCodesFromTheCurrentAndPreviousWindowOnly() {
+        String code = statelessCodeService.generate(EMAIL, NOW);
+
+        assertFalse(statelessCodeService.consume(EMAIL, code, NOW + 2 * PERIOD));
+        assertTrue(statelessCodeService.consume(EMAIL, code, NOW + PERIOD));
+    }
+
+    @Test
+    void checkingDoesNotConsume() {
+        String code = statelessCodeService.generate(EMAIL, NOW);
+
+        assertTrue(statelessCodeService.matches(EMAIL, code, NOW));
+        assertTrue(statelessCodeService.matches(EMAIL, code, NOW + 1));
+        assertTrue(statelessCodeService.consume(EMAIL, code, NOW + 2));
+        assertFalse(statelessCodeService.matches(EMAIL, code, NOW + 3));
+    }
+
+    @Test
+    void codesCanOnlyBeUsedOnce() {
+        String code = statelessCodeService.generate(EMAIL, NOW);
+
+        assertTrue(statelessCodeService.consume(EMAIL, code, NOW));
+        assertFalse(statelessCodeService.consume(EMAIL, code, NOW + 1));
+        verify(redis.valueOperations()).setIfAbsent(startsWith("verification-used:" + EMAIL + ":"), eq("1"),
+                eq(2 * PERIOD - 10), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsWrongCodesWithoutTouchingRedis() {
+        String code = statelessCodeService.generate(EMAIL, NOW);
+        String wrongCode = code.equals("000000") ? "000001" : "000000";
+        clearInvocations(redis.template(), redis.valueOperations());
+
+        assertFalse(statelessCodeService.matches(EMAIL, wrongCode, NOW));
+        assertFalse(statelessCodeService.consume(EMAIL, wrongCode, NOW));
+        assertFalse(statelessCodeService.consume(EMAIL, "12345", NOW));
+        verifyNoInteractions(redis.template(), redis.valueOperations());
+    }
+
+    private void allowResend() {
+        redis.store().keySet().removeIf(key -> key.startsWith("verification-sent:"));
+    }
+
+    @Test
+    void refusesMissingOrShortKeys() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        ResilienceService resilienceService = TestResilienceServices.fromApplicationYaml(new SimpleMeterRegistry());
+
+        assertThrows(IllegalStateException.class, () -> new StatelessCodeService(stringRedisTemplate, "",
+                resilienceService, new SimpleMeterRegistry()));
+        assertThrows(IllegalStateException.class, () -> new StatelessCodeService(stringRedisTemplate,
+                "c2hvcnQta2V5", resilienceService, new SimpleMeterRegistry()));
+    }
+}
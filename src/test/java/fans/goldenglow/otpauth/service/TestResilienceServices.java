@@ -0,0 +1,34 @@
+package fans.goldenglow.otpauth.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Creates {@link ResilienceService} instances for tests that construct services by hand.
+ */
+public final class TestResilienceServices {
+    private TestResilienceServices() {
+    }
+
+    /**
+     * Creates a ResilienceService configured from the {@code config.resilience} settings in {@code application.yml}.
+     *
+     * @param meterRegistry the MeterRegistry the bulkhead and circuit breaker metrics are bound to
+     * @return a ResilienceService with the application's default settings
+     */
+    public static ResilienceService fromApplicationYaml(MeterRegistry meterRegistry) {
+        StandardEnvironment environment = new StandardEnvironment();
+        try {
+            new YamlPropertySourceLoader().load("application", new ClassPathResource("application.yml"))
+                    .forEach(environment.getPropertySources()::addLast);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ResilienceService(environment, meterRegistry);
+    }
+}
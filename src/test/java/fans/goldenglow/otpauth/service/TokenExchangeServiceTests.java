@@ -0,0 +1,141 @@
+package fans.goldenglow.otpauth.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fans.goldenglow.otpauth.dto.TokenResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static fans.goldenglow.otpauth.service.ResilienceService.Dependency.REDIS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenExchangeServiceTests {
+    private static final String EMAIL = "user@example.com";
+    private static final String CODE = "123456";
+
+    private Map<String, String> store;
+    private TokenService tokenService;
+    private ValueOperations<String, String> valueOperations;
+    private ResilienceService resilienceService;
+    private TokenExchangeService tokenExchangeService;
+
+    @BeforeEach
+    void setUp() {
+        tokenService = mock(TokenService.class);
+        when(tokenService.validateVerificationCode(EMAIL, CODE)).thenReturn(true);
+        when(tokenService.consumeVerificationCode(EMAIL, CODE)).thenReturn(true).thenReturn(false);
+        when(tokenService.generateTokens(EMAIL)).thenReturn(new TokenResponse("access", "refresh"));
+
+        InMemoryStringRedis redis = new InMemoryStringRedis();
+        store = redis.store();
+        valueOperations = redis.valueOperations();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        resilienceService = TestResilienceServices.fromApplicationYaml(meterRegistry);
+        tokenExchangeService = new TokenExchangeService(tokenService, redis.template(), new ObjectMapper(),
+                resilienceService, meterRegistry);
+        ReflectionTestUtils.setField(tokenExchangeService, "IDEMPOTENCY_WINDOW", 10L);
+    }
+
+    @Test
+    void retryReturnsSameTokensWithoutMintingAgain() {
+        TokenResponse first = tokenExchangeService.exchange(EMAIL, CODE);
+        TokenResponse retry = tokenExchangeService.exchange(EMAIL, CODE);
+
+        assertEquals(first, retry);
+        verify(tokenService, times(1)).generateTokens(EMAIL);
+        verify(valueOperations).set(anyString(), anyString(), eq(10L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    void differentCodeIsNotAnsweredFromCache() {
+        tokenExchangeService.exchange(EMAIL, CODE);
+
+        assertNull(tokenExchangeService.exchange(EMAIL, "654321"));
+        assertNull(tokenExchangeService.exchange("other@example.com", CODE));
+    }
+
+    @Test
+    void retryWhileFirstExchangeIsInFlightWaitsForItsTokens() throws Exception {
+        CountDownLatch validating = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        when(tokenService.validateVerificationCode(EMAIL, CODE)).thenAnswer(invocation -> {
+            validating.countDown();
+            proceed.await();
+            return true;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<TokenResponse> first = executor.submit(() -> tokenExchangeService.exchange(EMAIL, CODE));
+            validating.await();
+            Future<TokenResponse> retry = executor.submit(() -> tokenExchangeService.exchange(EMAIL, CODE));
+            proceed.countDown();
+
+            assertEquals(first.get(5, TimeUnit.SECONDS), retry.get(5, TimeUnit.SECONDS));
+            verify(tokenService, times(1)).validateVerificationCode(EMAIL, CODE);
+            verify(tokenService, times(1)).generateTokens(EMAIL);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedExchangeReleasesTheKey() {
+        when(tokenService.validateVerificationCode(EMAIL, CODE)).thenReturn(false).thenReturn(true);
+
+        assertNull(tokenExchangeService.exchange(EMAIL, CODE));
+        assertTrue(store.isEmpty());
+        assertEquals(new TokenResponse("access", "refresh"), tokenExchangeService.exchange(EMAIL, CODE));
+    }
+
+    @Test
+    void failureWhileMintingLeavesTheCodeForARetry() {
+        when(tokenService.generateTokens(EMAIL))
+                .thenThrow(new DependencyUnavailableException(REDIS, new IllegalStateException("down")))
+                .thenReturn(new TokenResponse("access", "refresh"));
+
+        assertThrows(DependencyUnavailableException.class, () -> tokenExchangeService.exchange(EMAIL, CODE));
+        verify(tokenService, never()).consumeVerificationCode(anyString(), anyString());
+        assertTrue(store.isEmpty());
+
+        assertEquals(new TokenResponse("access", "refresh"), tokenExchangeService.exchange(EMAIL, CODE));
+        verify(tokenService, times(1)).consumeVerificationCode(EMAIL, CODE);
+    }
+
+    @Test
+    void codeConsumedByAnotherRequestIsRejected() {
+        when(tokenService.consumeVerificationCode(EMAIL, CODE)).thenReturn(false);
+
+        assertNull(tokenExchangeService.exchange(EMAIL, CODE));
+        assertTrue(store.isEmpty());
+    }
+
+    @Test
+    void exchangeStillSucceedsWhenCacheIsUnavailable() {
+        doThrow(new RedisConnectionFailureException("down"))
+                .when(valueOperations).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+
+        assertEquals(new TokenResponse("access", "refresh"), tokenExchangeService.exchange(EMAIL, CODE));
+    }
+
+    @Test
+    void exchangeIsRejectedWithoutValidatingWhileRedisCircuitIsOpen() {
+        for (int i = 0; i < 20; i++) {
+            assertThrows(RedisConnectionFailureException.class, () -> resilienceService.run(REDIS, () -> {
+                throw new RedisConnectionFailureException("down");
+            }));
+        }
+
+        assertThrows(DependencyUnavailableException.class, () -> tokenExchangeService.exchange(EMAIL, CODE));
+        verify(tokenService, never()).validateVerificationCode(anyString(), anyString());
+    }
+}
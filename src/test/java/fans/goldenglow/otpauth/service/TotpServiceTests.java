@@ -0,0 +1,170 @@
+package fans.goldenglow.otpauth.service;
+
+import fans.goldenglow.otpauth.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TotpServiceTests {
+    // The SHA-1 seed from RFC 6238 Appendix B, "12345678901234567890", in Base32.
+    private static final String RFC_6238_SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+
+    private final Map<Long, Long> lastSteps = new HashMap<>();
+    private UserService userService;
+    private TotpService totpService;
+
+    @BeforeEach
+    void setUp() {
+        userService = mock(UserService.class);
+        // Mirrors the conditional update: the step is only recorded if it is newer than the last one.
+        when(userService.advanceTotpLastStep(anyLong(), anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            long step = invocation.getArgument(1);
+            Long lastStep = lastSteps.get(id);
+            if (lastStep != null && lastStep >= step) {
+                return false;
+            }
+            lastSteps.put(id, step);
+            return true;
+        });
+
+        totpService = new TotpService(userService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(totpService, "TOTP_ISSUER", "OTPAuth");
+        ReflectionTestUtils.setField(totpService, "TOTP_DIGITS", 8);
+        ReflectionTestUtils.setField(totpService, "TOTP_PERIOD", 30L);
+        ReflectionTestUtils.setField(totpService, "TOTP_WINDOW", 0);
+        ReflectionTestUtils.setField(totpService, "TOTP_MAX_ATTEMPTS", 3);
+        ReflectionTestUtils.setField(totpService, "TOTP_LOCKOUT_DURATION", 900L);
+    }
+
+    @Test
+    void matchesRfc6238TestVectors() {
+        assertEquals(1L, totpService.findStep(1L, RFC_6238_SECRET, "94287082", 59L));
+        assertEquals(37037036L, totpService.findStep(1L, RFC_6238_SECRET, "07081804", 1111111109L));
+        assertEquals(37037037L, totpService.findStep(1L, RFC_6238_SECRET, "14050471", 1111111111L));
+        assertEquals(41152263L, totpService.findStep(1L, RFC_6238_SECRET, "89005924", 1234567890L));
+        assertEquals(66666666L, totpService.findStep(1L, RFC_6238_SECRET, "69279037", 2000000000L));
+        assertEquals(666666666L, totpService.findStep(1L, RFC_6238_SECRET, "65353130", 20000000000L));
+        assertEquals(-1L, totpService.findStep(1L, RFC_6238_SECRET, "94287083", 59L));
+    }
+
+    @Test
+    void findsStepsConcurrentlyWithDifferentSecrets() throws Exception {
+        String otherSecret = TotpService.encodeBase32("abcdefghijklmnopqrst".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(-1L, totpService.findStep(2L, otherSecret, "14050471", 1111111111L));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                String secret = t % 2 == 0 ? RFC_6238_SECRET : otherSecret;
+                long expected = t % 2 == 0 ? 37037037L : -1L;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        if (totpService.findStep(1L, secret, "14050471", 1111111111L) != expected) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        }
+    }
+
+    @Test
+    void base32RoundTrips() {
+        assertEquals(RFC_6238_SECRET, TotpService.encodeBase32("12345678901234567890".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("MZXW6YTBOI", TotpService.encodeBase32("foobar".getBytes(StandardCharsets.US_ASCII)));
+        for (int length = 0; length <= 40; length++) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (i * 37 + length);
+            }
+            assertArrayEquals(data, TotpService.decodeBase32(TotpService.encodeBase32(data)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> TotpService.decodeBase32("MZXW6YTB0I"));
+    }
+
+    @Test
+    void rejectsReplayOfTheSameOrAnOlderStep() {
+        ReflectionTestUtils.setField(totpService, "TOTP_WINDOW", 1);
+        User user = enrolledUser(1L);
+
+        assertTrue(totpService.verify(user, "14050471", 1111111111L));
+        assertFalse(totpService.verify(user, "14050471", 1111111111L));
+        // The previous step is still inside the window, but older than the one just accepted.
+        assertFalse(totpService.verify(user, "07081804", 1111111111L));
+        assertTrue(totpService.verify(enrolledUser(2L), "14050471", 1111111111L));
+        verify(userService, times(2)).advanceTotpLastStep(1L, 37037037L);
+    }
+
+    @Test
+    void locksOutAfterTooManyFailedAttempts() {
+        User user = enrolledUser(1L);
+        user.setTotpConfirmedAt(LocalDateTime.now());
+        when(userService.findByEmail(user.getEmail())).thenReturn(Optional.of(user));
+        // Mirrors the conditional update: the lock is set and the count cleared once the limit is reached.
+        doAnswer(invocation -> {
+            int failedAttempts = (user.getTotpFailedAttempts() == null ? 0 : user.getTotpFailedAttempts()) + 1;
+            if (failedAttempts >= (int) invocation.getArgument(1)) {
+                user.setTotpLockedUntil(invocation.getArgument(2));
+                failedAttempts = 0;
+            }
+            user.setTotpFailedAttempts(failedAttempts);
+            return null;
+        }).when(userService).recordTotpFailure(anyLong(), anyInt(), any(LocalDateTime.class));
+
+        assertFalse(totpService.validateTotpCode(user.getEmail(), "00000000", 1111111111L));
+        assertFalse(totpService.validateTotpCode(user.getEmail(), "00000000", 1111111111L));
+        assertNull(user.getTotpLockedUntil());
+        assertFalse(totpService.validateTotpCode(user.getEmail(), "00000000", 1111111111L));
+        assertNotNull(user.getTotpLockedUntil());
+
+        // A correct code is rejected while the lock lasts, and is not recorded as the last step.
+        assertFalse(totpService.validateTotpCode(user.getEmail(), "14050471", 1111111111L));
+        verify(userService, never()).advanceTotpLastStep(anyLong(), anyLong());
+
+        user.setTotpLockedUntil(LocalDateTime.now().minusSeconds(1));
+        assertTrue(totpService.validateTotpCode(user.getEmail(), "14050471", 1111111111L));
+    }
+
+    @Test
+    void rejectsReenrolmentOnceConfirmed() {
+        User user = enrolledUser(1L);
+
+        assertNotNull(totpService.enroll(user));
+        String pendingSecret = user.getTotpSecret();
+        assertNotEquals(RFC_6238_SECRET, pendingSecret);
+
+        user.setTotpConfirmedAt(LocalDateTime.now());
+        assertNull(totpService.enroll(user));
+        assertEquals(pendingSecret, user.getTotpSecret());
+        verify(userService, times(1)).save(user);
+    }
+
+    private static User enrolledUser(Long id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail("user" + id + "@example.com");
+        user.setTotpSecret(RFC_6238_SECRET);
+        return user;
+    }
+}
@@ -0,0 +1,74 @@
+package fans.goldenglow.otpauth.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerificationCodeGeneratorTests {
+
+    @Test
+    void generatesConfiguredLength() {
+        VerificationCodeGenerator generator = new VerificationCodeGenerator();
+        ReflectionTestUtils.setField(generator, "VERIFICATION_CODE_LENGTH", 6);
+
+        String code = generator.generate();
+
+        assertEquals(6, code.length());
+        assertTrue(code.chars().allMatch(Character::isDigit));
+    }
+
+    @Test
+    void generatesAnyLength() {
+        VerificationCodeGenerator generator = new VerificationCodeGenerator();
+
+        for (int length = 1; length <= 64; length++) {
+            String code = generator.generate(length);
+            assertEquals(length, code.length());
+            assertTrue(code.chars().allMatch(Character::isDigit));
+        }
+    }
+
+    @Test
+    void digitsAreRoughlyUniform() {
+        VerificationCodeGenerator generator = new VerificationCodeGenerator();
+        int[] counts = new int[10];
+        int samples = 100_000;
+
+        for (int i = 0; i < samples / 10; i++) {
+            generator.generate(10).chars().forEach(c -> counts[c - '0']++);
+        }
+
+        for (int count : counts) {
+            assertEquals(samples / 10.0, count, samples * 0.005);
+        }
+    }
+
+    @Test
+    void generatesValidCodesConcurrently() throws Exception {
+        VerificationCodeGenerator generator = new VerificationCodeGenerator();
+        try (ExecutorService executor = Executors.newFixedThreadPool(32)) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 32; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        String code = generator.generate(6);
+                        if (code.length() != 6 || !code.chars().allMatch(Character::isDigit)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        }
+    }
+}